@@ -0,0 +1,35 @@
+package Benchmarks;
+
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs all benchmarks in this package and writes the results as JSON, one file per commit if Benchmark.Commit is given.
+ *
+ * Example command line
+ * mvn -P benchmark test-compile exec:java -DBenchmark.Commit=$(git rev-parse --short HEAD)
+ * Optional -DBenchmark.Include=UsingBenchmark to run a subset.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String commit = System.getProperty("Benchmark.Commit", "");
+        String include = System.getProperty("Benchmark.Include", BenchmarkRunner.class.getPackage().getName() + ".");
+        String resultFile = "target" + File.separator + "jmh-result" + (commit.isEmpty() ? "" : "-" + commit) + ".json";
+        new File("target").mkdirs();
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+        System.out.println("Benchmark results written to " + resultFile);
+    }
+}
@@ -0,0 +1,39 @@
+package Benchmarks;
+
+
+import SeleniumHelpers.K1Logger;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of emitting a typical framework log message through K1Logger on the calling thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerBenchmark {
+
+    private Logger logger;
+    private String locatorText;
+
+    @Setup
+    public void setUp() {
+        logger = new K1Logger().setUpLogger("benchmarkLogger");
+        locatorText = "USERNAME_FIELD: css=input#textfield_username";
+    }
+
+    @Benchmark
+    public void infoMessage() {
+        logger.info("Find element " + locatorText);
+    }
+
+    @Benchmark
+    public void debugMessage() {
+        logger.debug("Find element " + locatorText);
+    }
+}
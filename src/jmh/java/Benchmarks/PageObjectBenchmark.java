@@ -0,0 +1,64 @@
+package Benchmarks;
+
+
+import PageObjects.PageObject;
+import SeleniumHelpers.Driver;
+import SeleniumHelpers.Locator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the PageObject helpers against StubWebDriver, i.e. everything except the browser round trips.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageObjectBenchmark {
+
+    private static final Locator PRESENT = new Locator("PRESENT", "css=input#textfield_username");
+    private static final Locator MISSING = new Locator("MISSING", "css=div#missing");
+    private static final Locator VARIABLE = new Locator("VARIABLE", "xpath=//tr[td[text()='{1}']]/td[{2}]");
+
+    @Param({"50"})
+    public int pageSourceKilobytes;
+
+    private BenchmarkPage page;
+
+    @Setup
+    public void setUp() {
+        page = new BenchmarkPage(new Driver("benchmarkLogger", new StubWebDriver(pageSourceKilobytes)));
+    }
+
+    @Benchmark
+    public boolean isVisiblePresent() {
+        return page.isVisible(PRESENT);
+    }
+
+    @Benchmark
+    public boolean isVisibleMissing() {
+        return page.isVisible(MISSING);
+    }
+
+    @Benchmark
+    public boolean isVisibleWithVariables() {
+        return page.isVisible(VARIABLE, "Smith", "3");
+    }
+
+    @Benchmark
+    public void checkForForbiddenTerms() {
+        page.checkForForbiddenTerms("(?i)kitomba|hazard&amp;co");
+    }
+
+    /**
+     * PageObject is abstract, the helpers under test are all inherited as is.
+     */
+    static class BenchmarkPage extends PageObject {
+        BenchmarkPage(Driver driver) {
+            super(driver);
+        }
+    }
+}
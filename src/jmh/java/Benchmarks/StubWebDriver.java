@@ -0,0 +1,368 @@
+package Benchmarks;
+
+
+import SeleniumHelpers.BrowserScripts;
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.FindsByCssSelector;
+import org.openqa.selenium.internal.FindsByXPath;
+import org.openqa.selenium.logging.LogEntries;
+import org.openqa.selenium.logging.Logs;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process WebDriver that answers every call immediately, so that benchmarks measure the cost of
+ * Driver, Using and the page objects rather than the cost of a browser.
+ * Any selector containing "missing" is treated as not present in the page.
+ * The framework's BrowserScripts get canned answers consistent with that, other scripts return null.
+ * switchTo(), navigate() and manage() do nothing: the page, window and cookies never change.
+ */
+public class StubWebDriver implements WebDriver, JavascriptExecutor, TakesScreenshot, FindsByCssSelector, FindsByXPath {
+    private static final String HANDLE = "stub-window";
+    private final StubWebElement element = new StubWebElement();
+    private final String pageSource;
+    private final long pageKey;
+    private final TargetLocator targetLocator = new StubTargetLocator();
+    private final Navigation navigation = new StubNavigation();
+    private final Options options = new StubOptions();
+
+    public StubWebDriver(int pageSourceKilobytes) {
+        StringBuilder source = new StringBuilder(pageSourceKilobytes * 1024 + 64);
+        source.append("<html><head><title>Stub</title></head><body>");
+        while (source.length() < pageSourceKilobytes * 1024) {
+            source.append("<div class=\"row\"><span>Lorem ipsum dolor sit amet</span></div>\n");
+        }
+        source.append("</body></html>");
+        pageSource = source.toString();
+        pageKey = pageSource.hashCode() & 0xffffffffL; // stands in for the key SCAN_FORBIDDEN_TERMS computes
+    }
+
+    public void get(String url) {
+    }
+
+    public String getCurrentUrl() {
+        return "http://stub.local/";
+    }
+
+    public String getTitle() {
+        return "Stub";
+    }
+
+    public List<WebElement> findElements(By by) {
+        return by.findElements(this);
+    }
+
+    public WebElement findElement(By by) {
+        return by.findElement(this);
+    }
+
+    public String getPageSource() {
+        return pageSource;
+    }
+
+    public void close() {
+    }
+
+    public void quit() {
+    }
+
+    public Set<String> getWindowHandles() {
+        return Collections.singleton(HANDLE);
+    }
+
+    public String getWindowHandle() {
+        return HANDLE;
+    }
+
+    public TargetLocator switchTo() {
+        return targetLocator;
+    }
+
+    public Navigation navigate() {
+        return navigation;
+    }
+
+    public Options manage() {
+        return options;
+    }
+
+    public Object executeScript(String script, Object... args) {
+        if (script.equals(BrowserScripts.VISIBILITY_OF_ALL)) {
+            List<Object> visible = new ArrayList<>();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                visible.add(!isMissing(args[i + 1]));
+            }
+            return visible;
+        }
+        if (script.equals(BrowserScripts.FIND_ALL)) {
+            List<Object> found = new ArrayList<>();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                found.add(isMissing(args[i + 1]) ? null : element);
+            }
+            return found;
+        }
+        if (script.equals(BrowserScripts.SET_VALUES)) {
+            List<Object> missing = new ArrayList<>();
+            for (int i = 0; i + 2 < args.length; i += 3) {
+                if (isMissing(args[i + 1])) {
+                    missing.add((long) (i / 3));
+                }
+            }
+            return missing;
+        }
+        if (script.equals(BrowserScripts.UNMET_STATES)) {
+            return unmetStates(args, args.length);
+        }
+        if (script.equals(BrowserScripts.SCAN_FORBIDDEN_TERMS)) {
+            return Arrays.asList(pageKey, null, null);
+        }
+        if (script.equals(BrowserScripts.CAPTURE_STORAGE)) {
+            return Arrays.asList(new HashMap<String, Object>(), new HashMap<String, Object>(), getCurrentUrl());
+        }
+        if (script.equals(BrowserScripts.WINDOW_INFO)) {
+            return Arrays.asList(getTitle(), getCurrentUrl());
+        }
+        if (script.equals("return navigator.userAgent;")) {
+            return "StubWebDriver";
+        }
+        return null;
+    }
+
+    /**
+     * Async scripts are answered immediately, as if every awaited state was already reached or can never be.
+     */
+    public Object executeAsyncScript(String script, Object... args) {
+        if (script.equals(BrowserScripts.WAIT_FOR_STATE)) {
+            boolean met = isMet(args[1], args[2]);
+            return Arrays.asList(met, met && !"INVISIBLE".equals(args[2]) ? element : null);
+        }
+        if (script.equals(BrowserScripts.WAIT_FOR_ALL_STATES)) {
+            return unmetStates(args, args.length - 1); // the last argument is the timeout
+        }
+        return null;
+    }
+
+    public <X> X getScreenshotAs(OutputType<X> target) {
+        return element.getScreenshotAs(target);
+    }
+
+    public WebElement findElementByCssSelector(String using) {
+        return find(using);
+    }
+
+    public List<WebElement> findElementsByCssSelector(String using) {
+        return findAll(using);
+    }
+
+    public WebElement findElementByXPath(String using) {
+        return find(using);
+    }
+
+    public List<WebElement> findElementsByXPath(String using) {
+        return findAll(using);
+    }
+
+    private static boolean isMissing(Object selector) {
+        return String.valueOf(selector).contains("missing");
+    }
+
+    private static boolean isMet(Object selector, Object state) {
+        return "INVISIBLE".equals(state) == isMissing(selector);
+    }
+
+    /**
+     * @return indexes of the (strategy, selector, state) triples in the first count arguments that are not met
+     */
+    private static List<Object> unmetStates(Object[] args, int count) {
+        List<Object> unmet = new ArrayList<>();
+        for (int i = 0; i + 2 < count; i += 3) {
+            if (!isMet(args[i + 1], args[i + 2])) {
+                unmet.add((long) (i / 3));
+            }
+        }
+        return unmet;
+    }
+
+    private WebElement find(String using) {
+        if (using.contains("missing")) {
+            throw new NoSuchElementException("Stub has no element for " + using);
+        }
+        return element;
+    }
+
+    private List<WebElement> findAll(String using) {
+        if (using.contains("missing")) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(element);
+    }
+
+    private class StubTargetLocator implements TargetLocator {
+        public WebDriver frame(int index) {
+            return StubWebDriver.this;
+        }
+
+        public WebDriver frame(String nameOrId) {
+            return StubWebDriver.this;
+        }
+
+        public WebDriver frame(WebElement frameElement) {
+            return StubWebDriver.this;
+        }
+
+        public WebDriver parentFrame() {
+            return StubWebDriver.this;
+        }
+
+        public WebDriver window(String nameOrHandle) {
+            return StubWebDriver.this;
+        }
+
+        public WebDriver defaultContent() {
+            return StubWebDriver.this;
+        }
+
+        public WebElement activeElement() {
+            return element;
+        }
+
+        public Alert alert() {
+            throw new NoAlertPresentException("Stub never shows an alert");
+        }
+    }
+
+    private static class StubNavigation implements Navigation {
+        public void back() {
+        }
+
+        public void forward() {
+        }
+
+        public void to(String url) {
+        }
+
+        public void to(URL url) {
+        }
+
+        public void refresh() {
+        }
+    }
+
+    /**
+     * Options, timeouts, window, logs and input methods of the stub: settings are ignored,
+     * there are no cookies, log entries or input method engines.
+     */
+    private static class StubOptions implements Options, Timeouts, ImeHandler, Window, Logs {
+        public void addCookie(Cookie cookie) {
+        }
+
+        public void deleteCookieNamed(String name) {
+        }
+
+        public void deleteCookie(Cookie cookie) {
+        }
+
+        public void deleteAllCookies() {
+        }
+
+        public Set<Cookie> getCookies() {
+            return Collections.emptySet();
+        }
+
+        public Cookie getCookieNamed(String name) {
+            return null;
+        }
+
+        public Timeouts timeouts() {
+            return this;
+        }
+
+        public ImeHandler ime() {
+            return this;
+        }
+
+        public Window window() {
+            return this;
+        }
+
+        public Logs logs() {
+            return this;
+        }
+
+        public List<String> getAvailableEngines() {
+            return Collections.emptyList();
+        }
+
+        public String getActiveEngine() {
+            return "";
+        }
+
+        public boolean isActivated() {
+            return false;
+        }
+
+        public void deactivate() {
+        }
+
+        public void activateEngine(String engine) {
+        }
+
+        public Timeouts implicitlyWait(long time, TimeUnit unit) {
+            return this;
+        }
+
+        public Timeouts setScriptTimeout(long time, TimeUnit unit) {
+            return this;
+        }
+
+        public Timeouts pageLoadTimeout(long time, TimeUnit unit) {
+            return this;
+        }
+
+        public void setSize(Dimension targetSize) {
+        }
+
+        public void setPosition(Point targetPosition) {
+        }
+
+        public Dimension getSize() {
+            return new Dimension(1280, 1024);
+        }
+
+        public Point getPosition() {
+            return new Point(0, 0);
+        }
+
+        public void maximize() {
+        }
+
+        public void fullscreen() {
+        }
+
+        public LogEntries get(String logType) {
+            return new LogEntries(Collections.emptyList());
+        }
+
+        public Set<String> getAvailableLogTypes() {
+            return Collections.emptySet();
+        }
+    }
+}
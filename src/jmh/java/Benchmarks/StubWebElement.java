@@ -0,0 +1,84 @@
+package Benchmarks;
+
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.WebElement;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Always present, always displayed element returned by StubWebDriver.
+ */
+public class StubWebElement implements WebElement {
+    private static final String PNG_BASE64 = // 1x1 transparent pixel
+            "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg==";
+
+    public void click() {
+    }
+
+    public void submit() {
+    }
+
+    public void sendKeys(CharSequence... keysToSend) {
+    }
+
+    public void clear() {
+    }
+
+    public String getTagName() {
+        return "div";
+    }
+
+    public String getAttribute(String name) {
+        return "";
+    }
+
+    public boolean isSelected() {
+        return false;
+    }
+
+    public boolean isEnabled() {
+        return true;
+    }
+
+    public String getText() {
+        return "";
+    }
+
+    public List<WebElement> findElements(By by) {
+        return Collections.singletonList(this);
+    }
+
+    public WebElement findElement(By by) {
+        return this;
+    }
+
+    public boolean isDisplayed() {
+        return true;
+    }
+
+    public Point getLocation() {
+        return new Point(0, 0);
+    }
+
+    public Dimension getSize() {
+        return new Dimension(10, 10);
+    }
+
+    public Rectangle getRect() {
+        return new Rectangle(getLocation(), getSize());
+    }
+
+    public String getCssValue(String propertyName) {
+        return "";
+    }
+
+    public <X> X getScreenshotAs(OutputType<X> target) {
+        return target.convertFromBase64Png(PNG_BASE64);
+    }
+}
@@ -0,0 +1,62 @@
+package Benchmarks;
+
+
+import SeleniumHelpers.Locator;
+import SeleniumHelpers.Using;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of locator resolution (Using.locator / processVariableLocator) for 0 to 5 variables,
+ * and of ByLocator dispatching a lookup to the css or xpath finder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UsingBenchmark {
+
+    @Param({"0", "1", "2", "3", "4", "5"})
+    public int variableCount;
+
+    @Param({"css", "xpath"})
+    public String strategy;
+
+    private Locator locator;
+    private String[] variables;
+    private By resolvedBy;
+    private StubWebDriver stubDriver;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder(strategy.equals("css") ? "css=div.row" : "xpath=//div[@class='row']");
+        variables = new String[variableCount];
+        for (int i = 1; i <= variableCount; i++) {
+            text.append(strategy.equals("css") ? "[data-v" + i + "='{" + i + "}']" : "[@data-v" + i + "='{" + i + "}']");
+            variables[i - 1] = "value" + i;
+        }
+        locator = new Locator("BENCHMARK_LOCATOR", text.toString());
+        resolvedBy = Using.locator(locator, variables);
+        stubDriver = new StubWebDriver(1);
+    }
+
+    @Benchmark
+    public By usingLocator() {
+        return Using.locator(locator, variables);
+    }
+
+    @Benchmark
+    public Locator processVariableLocator() {
+        return Using.processVariableLocator(locator, variables);
+    }
+
+    @Benchmark
+    public WebElement byLocatorDispatch() {
+        return resolvedBy.findElement(stubDriver);
+    }
+}
@@ -0,0 +1,140 @@
+package Benchmarks;
+
+
+import PageObjects.LoginPage;
+import SeleniumHelpers.CommandMetrics;
+import SeleniumHelpers.Driver;
+import SeleniumHelpers.FixtureServer;
+import SeleniumHelpers.K1Logger;
+import SeleniumHelpers.VirtualThreads;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Smoke tests authentication at scale without a browser farm: logs many users in at once through
+ * LoginPage.loginWithUsernameAndPassword, each in its own in-process HTML_UNIT session against the FixtureServer.
+ * Every session runs on a virtual thread on Java 21+ (see VirtualThreads), otherwise on a pool of platform threads.
+ * Sessions stay open until all users have logged in (on platform threads only if there is one per session),
+ * then the platform thread count and heap used per open session are reported.
+ * The sessions log to target/LoginScaleSessions.log at WARN level only, since one file appender shared by all of them
+ * would serialize the run (and pin the carrier threads of virtual threads). Run with LogChannels=TRUE to get their
+ * full logs, each session through its own channel.
+ *
+ * Example command line (run it on a Java 21+ JVM for virtual threads)
+ * mvn -P login-scale test-compile exec:java -DLoginScale.Sessions=2000
+ * Optional -DLoginScale.PlatformThreads=200 for the pool size without virtual threads (default 50).
+ */
+public class LoginScaleRunner {
+    private static final String PASSWORD = "Password1";
+    private static final String SESSION_LOGGER_NAME = "LoginScaleSessions";
+
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = Integer.getInteger("LoginScale.Sessions", 500);
+        int platformThreads = Integer.getInteger("LoginScale.PlatformThreads", 50);
+        Logger logger = new K1Logger().setUpLogger("LoginScale");
+        if (!K1Logger.isChannelLogging()) {
+            new K1Logger().setUpLogger(SESSION_LOGGER_NAME).setLevel(Level.WARN); // the Drivers re-use it as set up here
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        FixtureServer server = FixtureServer.getInstance();
+        for (int i = 1; i <= sessions; i++) {
+            server.addUser("user" + i, PASSWORD);
+        }
+        String baseUrl = server.getBaseUrl();
+
+        System.gc();
+        long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+        int baselineThreads = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+
+        AtomicInteger openSessions = new AtomicInteger();
+        AtomicInteger peakOpenSessions = new AtomicInteger();
+        AtomicLong peakHeap = new AtomicLong(baselineHeap);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> {
+            peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+            peakOpenSessions.accumulateAndGet(openSessions.get(), Math::max);
+        }, 0, 100, TimeUnit.MILLISECONDS);
+
+        CommandMetrics metrics = new CommandMetrics();
+        AtomicInteger loggedIn = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch allAttempted = new CountDownLatch(sessions);
+        boolean virtual = VirtualThreads.isEnabled();
+        boolean holdOpen = virtual || platformThreads >= sessions; // a smaller pool would deadlock holding its threads
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor("LoginScale", platformThreads, logger);
+        long start = System.nanoTime();
+        for (int i = 1; i <= sessions; i++) {
+            String username = "user" + i;
+            executor.submit(() -> {
+                Driver driver = null;
+                try {
+                    long sessionStart = System.nanoTime();
+                    driver = new Driver(SESSION_LOGGER_NAME, Driver.BrowserType.HTML_UNIT);
+                    openSessions.incrementAndGet();
+                    metrics.record("startSession", null, System.nanoTime() - sessionStart);
+                    long loginStart = System.nanoTime();
+                    driver.get(baseUrl);
+                    new LoginPage(driver).waitUntilLoaded().loginWithUsernameAndPassword(username, PASSWORD);
+                    metrics.record("login", null, System.nanoTime() - loginStart);
+                    loggedIn.incrementAndGet();
+                }
+                catch (Throwable e) {
+                    failed.incrementAndGet();
+                    logger.info("Login of " + username + " failed: " + e.toString());
+                }
+                finally {
+                    allAttempted.countDown();
+                }
+                if (driver == null)
+                    return;
+                try {
+                    if (holdOpen) {
+                        allAttempted.await(); // keep the session open so they all count towards the peak
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finally {
+                    driver.quit();
+                    openSessions.decrementAndGet();
+                }
+            });
+        }
+        allAttempted.await();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        sampler.shutdown();
+        sampler.awaitTermination(1, TimeUnit.SECONDS);
+        FixtureServer.shutdown();
+
+        int peakSessions = Math.max(1, peakOpenSessions.get());
+        int peakThreads = threads.getPeakThreadCount();
+        String report = String.format("Login scale run on %s threads: %d sessions, %d logged in, %d failed in %d ms.%n"
+                        + "Platform threads: %d before, %d at peak, %.2f per open session (%d at peak).%n"
+                        + "Heap: %d MB before, %d MB at peak, %d KB per open session.%n%s",
+                virtual ? "virtual" : platformThreads + " platform", sessions, loggedIn.get(), failed.get(), elapsedMillis,
+                baselineThreads, peakThreads, (double) (peakThreads - baselineThreads) / peakSessions, peakOpenSessions.get(),
+                baselineHeap / (1024 * 1024), peakHeap.get() / (1024 * 1024), (peakHeap.get() - baselineHeap) / 1024 / peakSessions,
+                metrics.report());
+        logger.info(report);
+        System.out.println(report); // on the console too, not only in target/LoginScale.log
+        K1Logger.flush(logger);
+        System.exit(failed.get() == 0 ? 0 : 1);
+    }
+}
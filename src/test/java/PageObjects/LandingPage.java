@@ -6,9 +6,7 @@ package PageObjects;
 
 import SeleniumHelpers.Driver;
 import SeleniumHelpers.Locator;
-import SeleniumHelpers.Using;
-import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
+import SeleniumHelpers.PageCondition;
 
 /**
  * Basic landing page of the main application.
@@ -33,19 +31,13 @@ public class LandingPage extends PageObject {
 
     public LandingPage waitUntilLoaded() {
         logger.info("Wait for Landing page to load.");
-        new WebDriverWait(driver, mediumTimeOut).until(ExpectedConditions.visibilityOfElementLocated(Using.locator(RADIO_BUTTON1)));
-        new WebDriverWait(driver, shortTimeOut).until(ExpectedConditions.visibilityOfElementLocated(Using.locator(RADIO_BUTTON2)));
-        new WebDriverWait(driver, shortTimeOut).until(ExpectedConditions.visibilityOfElementLocated(Using.locator(RADIO_BUTTON3)));
+        waitUntilReady(mediumTimeOut, PageCondition.visible(RADIO_BUTTON1), PageCondition.visible(RADIO_BUTTON2), PageCondition.visible(RADIO_BUTTON3));
+        onPageLoaded();
         return this;
     }
 
     public boolean areAllLandingPageElementsVisible() {
-        if (isVisible(SUBMIT_BUTTON) && isVisible(RADIO_BUTTON1)
-                && isVisible(RADIO_BUTTON2) && isVisible(RADIO_BUTTON3)
-                && isVisible(TEXT_RADIO_BUTTON1) && isVisible(TEXT_RADIO_BUTTON2)
-                && isVisible(TEXT_RADIO_BUTTON3)) {
-            return true;
-        }
-        else return false;
+        return areVisible(SUBMIT_BUTTON, RADIO_BUTTON1, RADIO_BUTTON2, RADIO_BUTTON3,
+                TEXT_RADIO_BUTTON1, TEXT_RADIO_BUTTON2, TEXT_RADIO_BUTTON3);
     }
 }
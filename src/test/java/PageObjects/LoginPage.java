@@ -2,9 +2,16 @@ package PageObjects;
 
 import SeleniumHelpers.Driver;
 import SeleniumHelpers.Locator;
+import SeleniumHelpers.PageCondition;
+import SeleniumHelpers.PageTimings;
+import SeleniumHelpers.PerformanceBudget;
+import SeleniumHelpers.SessionStateCache;
 import SeleniumHelpers.Using;
-import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
+import org.openqa.selenium.TimeoutException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Basic login page used to login to the main application.
@@ -23,11 +30,15 @@ public class LoginPage extends PageObject {
         super(aDriver);
     }
 
+    @Override
+    protected PerformanceBudget[] getPerformanceBudgets() {
+        return new PerformanceBudget[]{PerformanceBudget.of(PageTimings.DOM_CONTENT_LOADED, 800)};
+    }
+
     public LoginPage waitUntilLoaded() {
         logger.info("Wait for Login page to load.");
-        new WebDriverWait(driver, mediumTimeOut).until(ExpectedConditions.visibilityOfElementLocated(Using.locator(USERNAME_FIELD)));
-        new WebDriverWait(driver, shortTimeOut).until(ExpectedConditions.visibilityOfElementLocated(Using.locator(PASSWORD_FIELD)));
-        new WebDriverWait(driver, shortTimeOut).until(ExpectedConditions.visibilityOfElementLocated(Using.locator(LOGIN_BUTTON)));
+        waitUntilReady(mediumTimeOut, PageCondition.visible(USERNAME_FIELD), PageCondition.visible(PASSWORD_FIELD), PageCondition.visible(LOGIN_BUTTON));
+        onPageLoaded();
         return this;
     }
 
@@ -38,11 +49,58 @@ public class LoginPage extends PageObject {
         return landingPage;
     }
 
+    /**
+     * Non-blocking loginWithUsernameAndPassword, e.g. to log several users in at once from one test thread.
+     */
+    public CompletableFuture<LandingPage> loginWithUsernameAndPasswordAsync(String username, String password) {
+        return async(() -> loginWithUsernameAndPassword(username, password));
+    }
+
+    /**
+     * Logs in by restoring the user's session from SessionStateCache when there is one, otherwise through the UI,
+     * caching the session for the next time. Use this in tests that need a logged-in user but aren't about login.
+     */
+    public LandingPage loginWithCachedSession(String username, String password) {
+        SessionStateCache sessions = SessionStateCache.getInstance();
+        String loginUrl = driver.getCurrentUrl();
+        if (sessions.restore(username, driver)) {
+            if (isLandingPageShownAfterRestore()) {
+                return new LandingPage(driver).waitUntilLoaded();
+            }
+            logger.info("Cached session of " + username + " was not accepted, log in through the UI.");
+            sessions.invalidate(username);
+            driver.manage().deleteAllCookies();
+            driver.get(loginUrl);
+            waitUntilLoaded();
+        }
+        LandingPage landingPage = loginWithUsernameAndPassword(username, password);
+        sessions.capture(username, driver);
+        return landingPage;
+    }
+
+    /**
+     * Waits for whichever page the restored session ends up on: the landing page if the server accepted it,
+     * the login page if it sent the browser back there, so a rejected session doesn't cost the landing page timeout.
+     */
+    private boolean isLandingPageShownAfterRestore() {
+        try {
+            Locator shown = driver.waitUntil(mediumTimeOut * 1000L, "landing or login page after restoring a session", d -> {
+                Map<Locator, Boolean> visibility = visibilityOf(LandingPage.RADIO_BUTTON1, USERNAME_FIELD);
+                return visibility.get(LandingPage.RADIO_BUTTON1) ? LandingPage.RADIO_BUTTON1
+                        : visibility.get(USERNAME_FIELD) ? USERNAME_FIELD : null;
+            });
+            return shown == LandingPage.RADIO_BUTTON1;
+        }
+        catch (TimeoutException e) {
+            return false;
+        }
+    }
+
     public void inputUsernameAndPassword(String username, String password) {
-        driver.findElement(Using.locator(USERNAME_FIELD)).clear();
-        driver.findElement(Using.locator(USERNAME_FIELD)).sendKeys(username);
-        driver.findElement(Using.locator(PASSWORD_FIELD)).clear();
-        driver.findElement(Using.locator(PASSWORD_FIELD)).sendKeys(password);
+        Map<Locator, String> credentials = new LinkedHashMap<>();
+        credentials.put(USERNAME_FIELD, username);
+        credentials.put(PASSWORD_FIELD, password);
+        fillForm(credentials);
     }
 
     public void clickLoginButton() {
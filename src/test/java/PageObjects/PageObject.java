@@ -5,16 +5,18 @@ import PageObjects.*;
 import SeleniumHelpers.*;
 import io.appium.java_client.ios.IOSDriver;
 import org.apache.log4j.Logger;
-import org.joda.time.DateTime;
 import org.openqa.selenium.*;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.Select;
-import org.openqa.selenium.support.ui.WebDriverWait;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public abstract class PageObject {
 
@@ -27,6 +29,7 @@ public abstract class PageObject {
     public static Locator NO_PERMISSION_MESSAGE                             = new Locator("NO_PERMISSION_MESSAGE",                             "xpath=//p[text()=\"If you need access to the features on this page to get your job done, ask your administrator to change your permissions.\"]");
 
 
+    // in seconds, kept as such since every test passes them to the Driver waits, which take seconds
     public static int ludicrousTimeOut = 600;
     public static int extremeTimeOut = 300;
     public static int veryLongTimeOut = 120;
@@ -67,11 +70,52 @@ public abstract class PageObject {
         return logger;
     }
 
+    /**
+     * Checks every page Selenium goes through: forbidden terms, page timings and performance budgets,
+     * and names the page in the network capture.
+     * Call this at the end of every waitUntilLoaded method.
+     */
     public PageObject onPageLoaded(){
         checkForForbiddenTerms();
+        collectPageTimings();
+        driver.pageLoaded(getClass().getSimpleName());
         return this;
     }
 
+    /**
+     * Runs an operation of this page on the driver's own thread (see Driver.async()) instead of the calling one,
+     * e.g. loginPage.async(() -> loginPage.loginWithUsernameAndPassword(user, password))
+     * @return completes with the operation's result
+     */
+    public <T> CompletableFuture<T> async(Supplier<T> operation){
+        return driver.async().submit(d -> operation.get());
+    }
+
+    /**
+     * Performance budgets this page must stay within, checked by onPageLoaded. Pages override this to declare them.
+     */
+    protected PerformanceBudget[] getPerformanceBudgets(){
+        return new PerformanceBudget[0];
+    }
+
+    /**
+     * Records the timings of the current page load in the driver's metrics under the page class name
+     * and checks them against the page's performance budgets.
+     * @return the timings, or null if the browser doesn't report them, the page is still loading (a later call collects
+     * them) or this load was already collected
+     */
+    protected PageTimings collectPageTimings(){
+        PageTimings timings = PageTimings.collect(driver);
+        if(timings == null){
+            return null;
+        }
+        String pageName = getClass().getSimpleName();
+        timings.record(driver.getMetrics(), pageName);
+        K1Logger.info(logger, () -> pageName + " timings: " + timings);
+        PerformanceBudget.enforce(pageName, timings, logger, getPerformanceBudgets());
+        return timings;
+    }
+
     /**
      * Tests the browser window size and returns true if the width is smaller than the specific size where responsive css magic affects layout
      * @return True when small, else false
@@ -84,14 +128,30 @@ public abstract class PageObject {
     }
 
     public PageObject waitForVisibilityOf(Locator screenElementLocator, int seconds) {
-        logger.info("Wait for element " + screenElementLocator.name + " to be visible (no more than " + seconds + " seconds).");
-        new WebDriverWait(driver, seconds).until(ExpectedConditions.visibilityOfElementLocated(Using.locator(screenElementLocator)));
+        K1Logger.info(logger, () -> "Wait for element " + screenElementLocator.name + " to be visible (no more than " + seconds + " seconds).");
+        driver.waitFor(seconds, screenElementLocator, DomWaits.State.VISIBLE);
         return this;
     }
 
     public PageObject waitForPresenceOf(Locator screenElementLocator, int seconds) {
-        logger.info("Wait for element " + screenElementLocator.name + " to be present (no more than " + seconds + " seconds).");
-        new WebDriverWait(driver, seconds).until(ExpectedConditions.presenceOfElementLocated(Using.locator(screenElementLocator)));
+        K1Logger.info(logger, () -> "Wait for element " + screenElementLocator.name + " to be present (no more than " + seconds + " seconds).");
+        driver.waitFor(seconds, screenElementLocator, DomWaits.State.PRESENT);
+        return this;
+    }
+
+    /**
+     * Waits until all the conditions are met, checking them together with one overall deadline.
+     * Use this from waitUntilLoaded to declare what a page needs to show before it counts as loaded.
+     * @param seconds overall timeout (use standard timeout constants)
+     * @param conditions e.g. PageCondition.visible(LOGIN_BUTTON)
+     * @return self-reference
+     * @throws TimeoutException listing exactly which conditions were still unmet
+     */
+    protected PageObject waitUntilReady(int seconds, PageCondition... conditions) {
+        List<PageCondition> unmet = driver.waitForAll(seconds, Arrays.asList(conditions));
+        if (!unmet.isEmpty()) {
+            throw new TimeoutException(getClass().getSimpleName() + " not ready after " + seconds + " seconds, still waiting for: " + unmet);
+        }
         return this;
     }
 
@@ -188,30 +248,28 @@ public abstract class PageObject {
      */
     public boolean getCheckboxValue(Locator locator) {
         logger.info("Read state of " + locator.name + " from screen:");
-        WebElement checkbox = driver.findElement(Using.locator(locator));
-        boolean isTicked = checkbox.isSelected();
+        boolean isTicked = driver.getStaleRetry().run(locator.name, () -> driver.findElement(Using.locator(locator)).isSelected());
         logger.info("Ticked: "+ isTicked);
         return isTicked;
     }
 
     public boolean getCheckboxValue(Locator locator, String variable) {
         logger.info("Read state of " + locator.name + " from screen:");
-        WebElement checkbox = driver.findElement(Using.locator(locator, variable));
-        boolean isTicked = checkbox.isSelected();
+        boolean isTicked = driver.getStaleRetry().run(locator.name, () -> driver.findElement(Using.locator(locator, variable)).isSelected());
         logger.info("Ticked: "+ isTicked);
         return isTicked;
     }
 
     protected String getTextFieldValue(Locator field) {
         logger.info("Read " + field.name + " from screen:");
-        String value = driver.findElement(Using.locator(field)).getAttribute("value");
+        String value = driver.getStaleRetry().run(field.name, () -> driver.findElement(Using.locator(field)).getAttribute("value"));
         logger.info(value);
         return value;
     }
 
     protected String getTextFieldValue(Locator field, String variable) {
         logger.info("Read " + field.name + "(" + variable + ") from screen:");
-        String value = driver.findElement(Using.locator(field, variable)).getAttribute("value");
+        String value = driver.getStaleRetry().run(field.name, () -> driver.findElement(Using.locator(field, variable)).getAttribute("value"));
         logger.info(value);
         return value;
     }
@@ -224,7 +282,7 @@ public abstract class PageObject {
     }
 
     protected PageObject setTextFieldValue(Locator locator, String value) {
-        logger.info("Set " + locator.name + " to '" + value + "'.");
+        K1Logger.info(logger, () -> "Set " + locator.name + " to '" + value + "'.");
         WebElement field = driver.findElement(Using.locator(locator));
         field.clear();
         field.sendKeys(value);
@@ -238,6 +296,56 @@ public abstract class PageObject {
         element.sendKeys(value);
     }
 
+    /**
+     * Fills in a number of text fields, resolving all of them in a single round trip to the browser.
+     * Uses real key presses (clear and sendKeys) for each field, so key listeners and validation behave as for a user.
+     * @param fieldValues field locator to value, fields are filled in the map's iteration order (use a LinkedHashMap)
+     * @return self-reference
+     */
+    protected PageObject fillForm(Map<Locator, String> fieldValues) {
+        return fillForm(fieldValues, false);
+    }
+
+    /**
+     * Fills in a number of text fields, resolving all of them in a single round trip to the browser.
+     * @param fieldValues field locator to value, fields are filled in the map's iteration order (use a LinkedHashMap)
+     * @param setDirectly false to type values with real key presses,
+     *                    true to set all values and fire input/change events in one script (no key events are fired,
+     *                    so only use it for fields that don't rely on key listeners)
+     * @return self-reference
+     */
+    protected PageObject fillForm(Map<Locator, String> fieldValues, boolean setDirectly) {
+        K1Logger.info(logger, () -> "Fill in form " + (setDirectly ? "directly" : "using keys") + ": " + fieldValues.keySet());
+        Locator[] fields = fieldValues.keySet().toArray(new Locator[0]);
+        if (setDirectly) {
+            List<Object> arguments = new ArrayList<>();
+            List<Object> locatorArguments = BrowserScripts.locatorArguments(fields);
+            for (int i = 0; i < fields.length; i++) {
+                arguments.add(locatorArguments.get(i * 2));
+                arguments.add(locatorArguments.get(i * 2 + 1));
+                arguments.add(fieldValues.get(fields[i]));
+            }
+            List<?> missing = (List<?>) driver.executeScript(BrowserScripts.SET_VALUES, arguments.toArray());
+            if (!missing.isEmpty()) {
+                throw new NoSuchElementException("Unable to find form field " + fields[((Number) missing.get(0)).intValue()]);
+            }
+            return this;
+        }
+        List<?> elements = (List<?>) driver.executeScript(BrowserScripts.FIND_ALL,
+                BrowserScripts.locatorArguments(fields).toArray());
+        for (int i = 0; i < fields.length; i++) {
+            if (elements.get(i) == null) {
+                throw new NoSuchElementException("Unable to find form field " + fields[i]);
+            }
+        }
+        for (int i = 0; i < fields.length; i++) {
+            WebElement field = (WebElement) elements.get(i);
+            field.clear();
+            field.sendKeys(fieldValues.get(fields[i]));
+        }
+        return this;
+    }
+
     protected BigDecimal getMoneyLabelValue(Locator locator, String... args) {
         logger.info("Read money value in locator " + locator.name + ".");
         return new BigDecimal(driver.findElement(Using.locator(locator, args)).getText());
@@ -314,9 +422,9 @@ public abstract class PageObject {
     }
 
     public void sendKeysAndTab(Locator locator, String keys) {
-        logger.info("Type the following into element " + locator.name + ": " + keys);
-        driver.findElement(Using.locator(locator)).sendKeys(keys);
-        driver.findElement(Using.locator(locator)).sendKeys(Keys.TAB);
+        K1Logger.info(logger, () -> "Type the following into element " + locator.name + ": " + keys);
+        driver.getStaleRetry().run(locator.name, () -> driver.findElement(Using.locator(locator)).sendKeys(keys));
+        driver.getStaleRetry().run(locator.name, () -> driver.findElement(Using.locator(locator)).sendKeys(Keys.TAB));
     }
 
     /**
@@ -325,11 +433,13 @@ public abstract class PageObject {
      * @return true if element is either not displayed or not even present in the DOM, otherwise false.
      */
     public boolean isElementAbsent(Locator element) {
-        List<WebElement> elements = driver.findElements(Using.locator(element));
-        if(elements.size() > 0) {
-            return !elements.get(0).isDisplayed();
-        }
-        return true;
+        return driver.getStaleRetry().run(element.name, () -> {
+            List<WebElement> elements = driver.findElements(Using.locator(element));
+            if(elements.size() > 0) {
+                return !elements.get(0).isDisplayed();
+            }
+            return true;
+        });
     }
 
     /**
@@ -337,9 +447,9 @@ public abstract class PageObject {
      * @return true if found and displayed, else false.
      */
     public boolean isVisible(Locator locator) {
-        logger.info("Check if " + locator + " is visible.");
+        K1Logger.info(logger, () -> "Check if " + locator + " is visible.");
         try {
-            boolean isDisplayed = driver.findElement(Using.locator(locator)).isDisplayed();
+            boolean isDisplayed = driver.getStaleRetry().run(locator.name, () -> driver.findElement(Using.locator(locator)).isDisplayed());
             logger.info(isDisplayed?"Yes":"No, present in DOM, but not displayed");
             return isDisplayed;
         }
@@ -347,10 +457,34 @@ public abstract class PageObject {
             logger.info("No such element");
             return false;
         }
-        catch (StaleElementReferenceException ee) {
-            logger.info("Stale reference, try again");
-            return isVisible(locator);
+    }
+
+    /**
+     * Checks visibility of a number of locators in a single round trip to the browser.
+     * @param locators locators to check (css= and xpath= are supported)
+     * @return map of locator to true if found and displayed, else false. Keeps the order of the locators passed in.
+     */
+    public Map<Locator, Boolean> visibilityOf(Locator... locators) {
+        logger.info("Check visibility of " + locators.length + " locators in one script call.");
+        Map<Locator, Boolean> visibility = new LinkedHashMap<>();
+        if (locators.length == 0) {
+            return visibility;
+        }
+        List<?> results = (List<?>) driver.executeScript(BrowserScripts.VISIBILITY_OF_ALL,
+                BrowserScripts.locatorArguments(locators).toArray());
+        for (int i = 0; i < locators.length; i++) {
+            visibility.put(locators[i], Boolean.TRUE.equals(results.get(i)));
         }
+        K1Logger.info(logger, visibility::toString);
+        return visibility;
+    }
+
+    /**
+     * Single round trip version of calling isVisible for each locator.
+     * @return true if all locators are found and displayed, else false.
+     */
+    public boolean areVisible(Locator... locators) {
+        return !visibilityOf(locators).containsValue(false);
     }
 
     public boolean isK1StyledElementVisible(Locator locator){
@@ -371,7 +505,7 @@ public abstract class PageObject {
      * @return true if found and displayed, else false.
      */
     public boolean isVisible(WebElement element, Locator locator) {
-        logger.info("Check if " + locator + " is visible.");
+        K1Logger.info(logger, () -> "Check if " + locator + " is visible.");
         try {
             boolean isDisplayed = element.findElement(Using.locator(locator)).isDisplayed();
             return isDisplayed;
@@ -388,19 +522,15 @@ public abstract class PageObject {
      * @return true if found and displayed, else false.
      */
     public boolean isVisible(Locator locator, String... params) {
-        logger.info("Check if " + locator + " is visible for params: " + params);
+        K1Logger.info(logger, () -> "Check if " + locator + " is visible for params: " + params);
         try {
-            boolean isDisplayed = driver.findElement(Using.locator(locator, params)).isDisplayed();
+            boolean isDisplayed = driver.getStaleRetry().run(locator.name, () -> driver.findElement(Using.locator(locator, params)).isDisplayed());
             return isDisplayed;
         }
         catch (NoSuchElementException e) {
             logger.info("No such element");
             return false;
         }
-        catch (StaleElementReferenceException ee) {
-            logger.info("Stale reference, try again");
-            return isVisible(locator, params);
-        }
     }
 
     /**
@@ -411,7 +541,7 @@ public abstract class PageObject {
      * @return true if found and displayed, else false.
      */
     public boolean isVisible(WebElement element, Locator locator, String... params) {
-        logger.info("Check if " + locator + " is visible for params: " + params);
+        K1Logger.info(logger, () -> "Check if " + locator + " is visible for params: " + params);
         try {
             boolean isDisplayed = element.findElement(Using.locator(locator, params)).isDisplayed();
             return isDisplayed;
@@ -430,7 +560,7 @@ public abstract class PageObject {
      * @return the first visible element found by the locator
      */
     public WebElement findVisibleElement(Locator locator, String... params) {
-        logger.info("Find only the visible element matching locator " + locator + " with params: "+ params);
+        K1Logger.info(logger, () -> "Find only the visible element matching locator " + locator + " with params: "+ params);
         List<WebElement> elements = driver.findElements(Using.locator(locator, params));
         for (WebElement elt:elements) {
             if(elt.isDisplayed()) {
@@ -449,13 +579,13 @@ public abstract class PageObject {
      */
     public WebElement waitForVisibilityOfAtLeastOneElement(int timeout, Locator locator, String... params) {
         logger.info("Wait for visibility of at least one element matching locator " + locator + " with params: "+ params);
-        DateTime timeoutThreshold = DateTime.now().plusSeconds(timeout);
-        do {
-            try{
-                return findVisibleElement(locator, params);
-            } catch(NoSuchElementException e){/*as long as the timeout hasn't been reached we are ok to ignore any exceptions*/}
-        } while (DateTime.now().isBefore(timeoutThreshold));
-        throw new NoSuchElementException("Wait failed: Tried for " + timeout + " seconds, but unable to find a single visible element matching locator: " + locator);
+        try {
+            // resolves in the browser the moment one of the matches becomes visible, rather than polling findElements
+            return driver.waitFor(timeout, Using.processVariableLocator(locator, params), DomWaits.State.ANY_VISIBLE);
+        }
+        catch (TimeoutException e) {
+            throw new NoSuchElementException("Wait failed: Tried for " + timeout + " seconds, but unable to find a single visible element matching locator: " + locator);
+        }
     }
 
 
@@ -477,8 +607,7 @@ public abstract class PageObject {
      * @param locator
      */
     public void clickWithConfidence(Locator locator) {
-        new WebDriverWait(driver, shortTimeOut).until(
-                ExpectedConditions.elementToBeClickable(Using.locator(locator))).click();
+        clickWithConfidence(locator.name, Using.locator(locator));
     }
 
     /**
@@ -487,38 +616,39 @@ public abstract class PageObject {
      * @param locator
      */
     public void clickWithConfidence(Locator locator, String... variables ) {
-        new WebDriverWait(driver, shortTimeOut).until(
-                ExpectedConditions.elementToBeClickable(Using.locator(locator, variables))).click();
+        clickWithConfidence(locator.name, Using.locator(locator, variables));
+    }
+
+    /**
+     * Waits once for the element to be clickable, then only the click is retried if the element went stale,
+     * each retry finding it again with a short wait, so a re-rendering element costs at most a few seconds extra.
+     */
+    private void clickWithConfidence(String locatorName, By by) {
+        WebElement[] element = {driver.waitUntil(shortTimeOut * 1000L, locatorName + " to be clickable", ExpectedConditions.elementToBeClickable(by))};
+        driver.getStaleRetry().run(locatorName, () -> {
+            element[0].click();
+            return null;
+        }, () -> element[0] = driver.waitUntil(veryShortTimeOut * 1000L, locatorName + " to be clickable again", ExpectedConditions.elementToBeClickable(by)));
     }
     /**
      * Checks page source for terms (defined with regex) that must not be there. Main use case for it is Baxus, which shouldn't have any references to Kitomba.
      * Idea is to call this from every waitUntilLoaded method, so that all the pages that Selenium goes through will be checked.
      */
     public void checkForForbiddenTerms(){
-        checkForForbiddenTerms(SessionProperties.getInstance().getProperty("ForbiddenTerms"));
+        checkForForbiddenTerms(ForbiddenTermsScanner.fromSessionProperties());
     }
     /**
      * Checks page source for terms (defined with regex) that must not be there. Main use case for it is Baxus, which shouldn't have any references to Kitomba.
      * Idea is to call this from every waitUntilLoaded method, so that all the pages that Selenium goes through will be checked.
      */
     public void checkForForbiddenTerms(String forbidden){
-        if(forbidden!= null && !forbidden.isEmpty()){
-            forbidden = forbidden.replace("&quot;", "\"")
-                    .replace("&apos;", "'")
-                    .replace("&lt;","<")
-                    .replace("&gt;",">")
-                    .replace("&amp;","&");
-            logger.info("Check for forbidden terms appearing in the page: " + forbidden);
-            String pageSource = driver.getPageSource();
-            Pattern pattern = Pattern.compile(forbidden);
-            Matcher matcher = pattern.matcher(pageSource);
-
-            if(matcher.find()) {
-                int snippetStart = Math.max(0, matcher.start() - 75);
-                int snippetEnd = Math.min(matcher.end()+75, pageSource.length());
-                throw new TestError("Forbidden term '" + forbidden + "' found in page source. Snippet:\n" +
-                        pageSource.substring(snippetStart, snippetEnd));
-            }
+        checkForForbiddenTerms(ForbiddenTermsScanner.forTerms(forbidden));
+    }
+
+    private void checkForForbiddenTerms(ForbiddenTermsScanner scanner){
+        if(scanner != null){
+            K1Logger.info(logger, () -> "Check for forbidden terms appearing in the page: " + scanner.getTerms());
+            scanner.scan(driver);
         }
     }
 
@@ -578,7 +708,7 @@ public abstract class PageObject {
     public boolean isElementEnabled(Locator locator) {
         logger.info("Checks if element in passed in locator is enabled");
         try {
-            return driver.findElement(Using.locator(locator)).isEnabled();
+            return driver.getStaleRetry().run(locator.name, () -> driver.findElement(Using.locator(locator)).isEnabled());
         }
         catch (NoSuchElementException e) {
             return false;
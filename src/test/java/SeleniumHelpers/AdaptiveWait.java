@@ -0,0 +1,110 @@
+package SeleniumHelpers;
+
+
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Polling wait with a millisecond budget. Polls quickly at first and backs off exponentially with jitter, so that
+ * conditions met within a few milliseconds are noticed straight away without hammering the driver on long waits.
+ * Like WebDriverWait it ignores NoSuchElementException and StaleElementReferenceException while polling.
+ *
+ * Settings (read through Settings):
+ * WaitInitialPollMillis - first poll interval (default 10)
+ * WaitMaxPollMillis     - poll interval cap (default 500)
+ */
+public class AdaptiveWait {
+    private static final double BACKOFF_FACTOR = 2.0;
+    private static final double JITTER = 0.2;
+    private static final long INITIAL_POLL_MILLIS = Settings.getLong("WaitInitialPollMillis", 10);
+    private static final long MAX_POLL_MILLIS = Settings.getLong("WaitMaxPollMillis", 500);
+
+    private final WebDriver driver;
+    private final long timeoutMillis;
+    private String message = null;
+    private int polls = 0;
+    private long elapsedNanos = 0;
+
+    /**
+     * @param driver driver passed to the condition
+     * @param timeoutMillis budget in milliseconds
+     */
+    public AdaptiveWait(WebDriver driver, long timeoutMillis) {
+        this.driver = driver;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public AdaptiveWait withMessage(String message) {
+        this.message = message;
+        return this;
+    }
+
+    /**
+     * Polls the condition until it returns something other than null or false.
+     * @return the condition's last result
+     * @throws TimeoutException if the budget runs out first
+     */
+    public <V> V until(Function<? super WebDriver, V> condition) {
+        long start = System.nanoTime();
+        polls = 0;
+        long deadline = start + timeoutMillis * 1000000L;
+        double pollMillis = INITIAL_POLL_MILLIS;
+        RuntimeException lastException = null;
+        try {
+            while (true) {
+                polls++;
+                try {
+                    V value = condition.apply(driver);
+                    if (value != null && !Boolean.FALSE.equals(value)) {
+                        return value;
+                    }
+                    lastException = null;
+                }
+                catch (NoSuchElementException | StaleElementReferenceException e) {
+                    lastException = e;
+                }
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    throw new TimeoutException("Timed out after " + timeoutMillis + " ms (" + polls + " polls)"
+                            + (message == null ? "" : " waiting for " + message), lastException);
+                }
+                long sleepMillis = (long) (pollMillis * (1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+                sleep(Math.max(1, Math.min(sleepMillis, remainingNanos / 1000000L + 1)));
+                pollMillis = Math.min(pollMillis * BACKOFF_FACTOR, MAX_POLL_MILLIS);
+            }
+        }
+        finally {
+            elapsedNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return how many times the condition was evaluated by the last until()
+     */
+    public int getPollCount() {
+        return polls;
+    }
+
+    /**
+     * @return how long the last until() took, whether it succeeded or timed out
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TestError("Interrupted while waiting.");
+        }
+    }
+
+}
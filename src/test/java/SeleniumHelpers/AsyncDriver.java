@@ -0,0 +1,191 @@
+package SeleniumHelpers;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Non-blocking facade of a Driver. Commands go into the Driver's command queue and are run one at a time, in order,
+ * on the Driver's own thread, so one test thread can drive several sessions at once, e.g.
+ *
+ *   CompletableFuture<LandingPage> alice = aliceDriver.async().submit(d -> new LoginPage(d).waitUntilLoaded().loginWithUsernameAndPassword("alice", pwd));
+ *   CompletableFuture<LandingPage> bob = bobDriver.async().submit(d -> new LoginPage(d).waitUntilLoaded().loginWithUsernameAndPassword("bob", pwd));
+ *   CompletableFuture.allOf(alice, bob).join();
+ *
+ * WebDriver sessions aren't thread safe: while commands are queued, don't use the same Driver directly.
+ * Page objects run their operations through here with PageObject.async(), e.g. LoginPage.loginWithUsernameAndPasswordAsync.
+ * Driver.quit() runs the commands already queued, then stops the thread.
+ */
+public class AsyncDriver {
+    private static final Command<Void> STOP = new Command<>(null);
+    private static final long INTERRUPT_TIMEOUT_MILLIS = 10000;
+
+    private final Driver driver;
+    private final LinkedBlockingQueue<Command<?>> commands = new LinkedBlockingQueue<>();
+    private final AtomicInteger unfinished = new AtomicInteger(); // queued or running
+    private volatile boolean stopped = false;
+
+    private static class Command<T> {
+        private final Function<Driver, T> action;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long queuedAt = System.nanoTime();
+
+        private Command(Function<Driver, T> action) {
+            this.action = action;
+        }
+
+        private void run(Driver driver) {
+            if (future.isDone()) // cancelled while queued
+                return;
+            try {
+                future.complete(action.apply(driver));
+            }
+            catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    AsyncDriver(Driver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Queues a command, typically a page object operation.
+     * @param command runs on the Driver's thread with the Driver
+     * @return completes with the command's result, or exceptionally with what it threw
+     */
+    public <T> CompletableFuture<T> submit(Function<Driver, T> command) {
+        Command<T> queued = new Command<>(command);
+        if (stopped) {
+            queued.future.completeExceptionally(new TestError("Driver " + driver.getID() + " has quit, it takes no more commands."));
+            return queued.future;
+        }
+        unfinished.incrementAndGet();
+        commands.add(queued);
+        return queued.future;
+    }
+
+    public CompletableFuture<Void> run(Consumer<Driver> command) {
+        return submit(d -> {
+            command.accept(d);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> get(String url) {
+        return run(d -> d.get(url));
+    }
+
+    public CompletableFuture<Void> takeScreenshot(String fileName) {
+        return run(d -> d.takeScreenshot(fileName));
+    }
+
+    /**
+     * @return number of commands waiting to run
+     */
+    public int getQueuedCount() {
+        return commands.size();
+    }
+
+    /**
+     * Waits until the commands submitted so far have run. From a command (the Driver's own thread) it can't wait
+     * for itself, so it only checks.
+     * @return false if commands were still queued or running after the timeout
+     */
+    boolean awaitIdle(long timeoutMillis) {
+        if (Thread.currentThread() == driver)
+            return unfinished.get() <= 1;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            while (unfinished.get() > 0) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0)
+                    return false;
+                try {
+                    wait(left);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the queued commands until stopped, this is the Driver thread's run().
+     */
+    void serviceCommands() {
+        while (true) {
+            Command<?> command;
+            try {
+                command = commands.take();
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+            if (command == STOP)
+                break;
+            driver.getMetrics().record("asyncQueueWait", null, System.nanoTime() - command.queuedAt);
+            command.run(driver);
+            finished();
+        }
+        failRemaining();
+    }
+
+    /**
+     * Takes no more commands and puts the poison pill behind the ones already queued. Waits for them to run,
+     * unless called from a command (the Driver's own thread). After the timeout the driver thread is interrupted,
+     * the commands still queued fail, and the thread gets a little longer to finish the command it is running.
+     * @throws TestError if the driver thread is still running a command, the session mustn't be torn down under it
+     */
+    void stop(long timeoutMillis) {
+        stopped = true;
+        commands.add(STOP);
+        if (Thread.currentThread() == driver)
+            return;
+        join(timeoutMillis);
+        if (!driver.isAlive())
+            return;
+        driver.getLogger().info(commands.size() + " async commands still queued after " + timeoutMillis + " ms, stop the driver thread.");
+        driver.interrupt();
+        join(INTERRUPT_TIMEOUT_MILLIS);
+        if (driver.isAlive())
+            throw new TestError("Driver " + driver.getID() + " is still running an async command, unable to quit it.");
+    }
+
+    private void join(long millis) {
+        try {
+            driver.join(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void failRemaining() {
+        List<Command<?>> remaining = new ArrayList<>();
+        commands.drainTo(remaining);
+        for (Command<?> command : remaining) {
+            command.future.completeExceptionally(new TestError("Driver " + driver.getID() + " quit before the command ran."));
+            if (command != STOP) {
+                finished();
+            }
+        }
+    }
+
+    private void finished() {
+        if (unfinished.decrementAndGet() == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package SeleniumHelpers;
+
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands log events to a dedicated writer thread through a bounded buffer, so that file I/O doesn't block the test thread.
+ * When the buffer is full the overflow policy decides: BLOCK waits for space (nothing is lost),
+ * DROP discards the event and the number of dropped events is written to the log later.
+ * Call flush() before reading the log file, e.g. Driver.quit() does this.
+ * Location info (%C, %M, %L, ...) needs a stack walk on the logging thread, so it is only captured when asked for;
+ * without it the target's layout must not use those conversions.
+ */
+public class AsyncFileAppender extends AppenderSkeleton {
+
+    public enum OverflowPolicy {
+        BLOCK,
+        DROP;
+    }
+
+    private static final long FLUSH_TIMEOUT_MILLIS = 10000;
+    private final Appender target;
+    private final ArrayBlockingQueue<LoggingEvent> buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final boolean locationInfo;
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Object progress = new Object();
+    private long written = 0; // guarded by progress
+    private long reportedDrops = 0;
+    private volatile boolean stopping = false;
+    private final Thread writer;
+
+    /**
+     * @param target appender that does the actual writing, only ever called from the writer thread
+     * @param bufferSize max number of events waiting to be written
+     * @param overflowPolicy what to do when the buffer is full
+     * @param locationInfo true to capture the caller's class and method for the target's layout
+     */
+    public AsyncFileAppender(Appender target, int bufferSize, OverflowPolicy overflowPolicy, boolean locationInfo) {
+        this.target = target;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.overflowPolicy = overflowPolicy;
+        this.locationInfo = locationInfo;
+        setName("async-" + target.getName());
+        writer = new Thread(this::writeLoop, "log-writer-" + target.getName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    protected void append(LoggingEvent event) {
+        // Everything that depends on the calling thread must be captured before the event changes threads
+        if (locationInfo) {
+            event.getLocationInformation();
+        }
+        event.getThreadName();
+        event.getNDC();
+        event.getMDCCopy();
+        event.getRenderedMessage();
+        if (overflowPolicy == OverflowPolicy.DROP) {
+            if (buffer.offer(event)) {
+                enqueued.incrementAndGet();
+            }
+            else {
+                dropped.incrementAndGet();
+            }
+            return;
+        }
+        try {
+            buffer.put(event);
+            enqueued.incrementAndGet();
+        }
+        catch (InterruptedException e) {
+            dropped.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (!stopping || !buffer.isEmpty()) {
+            try {
+                LoggingEvent event = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    continue;
+                }
+                reportDrops(event);
+                target.doAppend(event);
+                synchronized (progress) {
+                    written++;
+                    progress.notifyAll();
+                }
+            }
+            catch (InterruptedException e) {
+                if (stopping) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void reportDrops(LoggingEvent nextEvent) {
+        long drops = dropped.get();
+        if (drops > reportedDrops) {
+            target.doAppend(new LoggingEvent(nextEvent.getFQNOfLoggerClass(), nextEvent.getLogger(), Level.WARN,
+                    "Log buffer was full, dropped " + (drops - reportedDrops) + " log messages.", null));
+            reportedDrops = drops;
+        }
+    }
+
+    /**
+     * Waits until every event appended so far has been written (or 10 seconds have passed).
+     */
+    public void flush() {
+        long expected = enqueued.get();
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MILLIS;
+        synchronized (progress) {
+            while (written < expected && System.currentTimeMillis() < deadline) {
+                try {
+                    progress.wait(50);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        stopping = true;
+        writer.interrupt();
+        try {
+            writer.join(FLUSH_TIMEOUT_MILLIS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+    }
+
+    public boolean requiresLayout() {
+        return false;
+    }
+}
@@ -0,0 +1,290 @@
+package SeleniumHelpers;
+
+
+import org.openqa.selenium.WebDriverException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Javascript snippets that resolve our Locators inside the browser, so that a whole batch of locators
+ * can be handled with a single executeScript call instead of a findElement round trip per locator.
+ * Locators are passed to the scripts as a flat list of (strategy, selector) pairs, see locatorArguments().
+ */
+public class BrowserScripts {
+
+    /**
+     * Defines locate(strategy, selector), locateAll(strategy, selector) and isVisible(element).
+     * isVisible follows the same rules as WebElement.isDisplayed() for the cases we care about:
+     * display:none on any ancestor, hidden visibility, zero opacity, hidden inputs and zero size.
+     */
+    public static final String LOCATOR_FUNCTIONS =
+            "function locate(strategy, selector) {" +
+            "  if (strategy === 'xpath') {" +
+            "    return document.evaluate(selector, document, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;" +
+            "  }" +
+            "  return document.querySelector(selector);" +
+            "}" +
+            "function locateAll(strategy, selector) {" +
+            "  if (strategy === 'xpath') {" +
+            "    var snapshot = document.evaluate(selector, document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);" +
+            "    var nodes = [];" +
+            "    for (var i = 0; i < snapshot.snapshotLength; i++) nodes.push(snapshot.snapshotItem(i));" +
+            "    return nodes;" +
+            "  }" +
+            "  return Array.prototype.slice.call(document.querySelectorAll(selector));" +
+            "}" +
+            "function isVisible(element) {" +
+            "  if (!element) return false;" +
+            "  if (element.tagName === 'INPUT' && (element.type || '').toLowerCase() === 'hidden') return false;" +
+            "  var style = window.getComputedStyle(element);" +
+            "  if (style.visibility === 'hidden' || style.visibility === 'collapse') return false;" +
+            "  for (var node = element; node && node.nodeType === 1; node = node.parentElement) {" +
+            "    var nodeStyle = node === element ? style : window.getComputedStyle(node);" +
+            "    if (nodeStyle.display === 'none' || nodeStyle.opacity === '0') return false;" +
+            "  }" +
+            "  var rect = element.getBoundingClientRect();" +
+            "  return rect.width > 0 && rect.height > 0;" +
+            "}";
+
+    /**
+     * Returns an array of booleans, one per (strategy, selector) pair passed in arguments.
+     */
+    public static final String VISIBILITY_OF_ALL = LOCATOR_FUNCTIONS +
+            "var result = [];" +
+            "for (var i = 0; i < arguments.length; i += 2) {" +
+            "  result.push(isVisible(locate(arguments[i], arguments[i + 1])));" +
+            "}" +
+            "return result;";
+
+    /**
+     * Returns an array of elements (null where nothing matched), one per (strategy, selector) pair passed in arguments.
+     */
+    public static final String FIND_ALL = LOCATOR_FUNCTIONS +
+            "var result = [];" +
+            "for (var i = 0; i < arguments.length; i += 2) {" +
+            "  result.push(locate(arguments[i], arguments[i + 1]));" +
+            "}" +
+            "return result;";
+
+    /**
+     * Sets values directly and fires input and change events, so that framework bindings pick them up.
+     * Takes (strategy, selector, value) triples and returns the indexes of the triples that matched nothing.
+     * Uses the native value setter so that frameworks wrapping the value property (e.g. React) see the change.
+     */
+    public static final String SET_VALUES = LOCATOR_FUNCTIONS +
+            "var missing = [];" +
+            "for (var i = 0; i < arguments.length; i += 3) {" +
+            "  var element = locate(arguments[i], arguments[i + 1]);" +
+            "  if (!element) { missing.push(i / 3); continue; }" +
+            "  var setter = Object.getOwnPropertyDescriptor(Object.getPrototypeOf(element), 'value');" +
+            "  if (setter && setter.set) { setter.set.call(element, arguments[i + 2]); } else { element.value = arguments[i + 2]; }" +
+            "  element.dispatchEvent(new Event('input', {bubbles: true}));" +
+            "  element.dispatchEvent(new Event('change', {bubbles: true}));" +
+            "}" +
+            "return missing;";
+
+    /**
+     * Defines checkState(strategy, selector, state) for the states PRESENT, VISIBLE, INVISIBLE and ANY_VISIBLE.
+     * Returns [element] when the state is reached (element is null for INVISIBLE, the first visible match for ANY_VISIBLE),
+     * otherwise null.
+     */
+    public static final String STATE_FUNCTIONS = LOCATOR_FUNCTIONS +
+            "function checkState(strategy, selector, state) {" +
+            "  if (state === 'ANY_VISIBLE') {" +
+            "    var all = locateAll(strategy, selector);" +
+            "    for (var i = 0; i < all.length; i++) { if (isVisible(all[i])) return [all[i]]; }" +
+            "    return null;" +
+            "  }" +
+            "  var element = locate(strategy, selector);" +
+            "  if (state === 'PRESENT') return element ? [element] : null;" +
+            "  if (state === 'VISIBLE') return isVisible(element) ? [element] : null;" +
+            "  return isVisible(element) ? null : [null];" +
+            "}" +
+            "function unmetStates(args, count) {" +
+            "  var unmet = [];" +
+            "  for (var i = 0; i < count; i += 3) {" +
+            "    if (!checkState(args[i], args[i + 1], args[i + 2])) unmet.push(i / 3);" +
+            "  }" +
+            "  return unmet;" +
+            "}";
+
+    /**
+     * Defines observeUntil(check, timeout, onTimeout, callback): calls back with the first non-null result of check(),
+     * re-checking on every DOM mutation plus every 250ms to catch css transitions that don't mutate the DOM,
+     * so there is no wire traffic while waiting. Calls back with onTimeout() if the timeout (ms) passes first.
+     */
+    private static final String OBSERVE_FUNCTION =
+            "function observeUntil(check, timeout, onTimeout, callback) {" +
+            "  var finished = false, observer = null, poller = null, timer = null;" +
+            "  function finish(result) {" +
+            "    if (finished) return;" +
+            "    finished = true;" +
+            "    if (observer) observer.disconnect();" +
+            "    clearInterval(poller);" +
+            "    clearTimeout(timer);" +
+            "    callback(result);" +
+            "  }" +
+            "  function evaluate() { var result = check(); if (result) finish(result); }" +
+            "  evaluate();" +
+            "  if (finished) return;" +
+            "  observer = new MutationObserver(evaluate);" +
+            "  observer.observe(document.documentElement, {childList: true, subtree: true, attributes: true, characterData: true});" +
+            "  poller = setInterval(evaluate, 250);" +
+            "  timer = setTimeout(function() { finish(onTimeout()); }, timeout);" +
+            "}";
+
+    /**
+     * Async script that resolves as soon as a locator reaches a state, see checkState.
+     * Arguments: strategy, selector, state, timeout in milliseconds.
+     * Calls back with [true, element] or [false, null] on timeout.
+     */
+    public static final String WAIT_FOR_STATE = STATE_FUNCTIONS + OBSERVE_FUNCTION +
+            "var args = arguments;" +
+            "observeUntil(function() {" +
+            "    var met = checkState(args[0], args[1], args[2]);" +
+            "    return met ? [true, met[0]] : null;" +
+            "  }, args[3], function() { return [false, null]; }, args[args.length - 1]);";
+
+    /**
+     * Returns the indexes of the (strategy, selector, state) triples passed in arguments that are not met yet.
+     */
+    public static final String UNMET_STATES = STATE_FUNCTIONS +
+            "return unmetStates(arguments, arguments.length);";
+
+    /**
+     * Async script that resolves as soon as all (strategy, selector, state) triples are met.
+     * Arguments: the triples followed by the timeout in milliseconds.
+     * Calls back with the indexes of the unmet triples, i.e. an empty list when all were met in time.
+     */
+    public static final String WAIT_FOR_ALL_STATES = STATE_FUNCTIONS + OBSERVE_FUNCTION +
+            "var args = arguments, count = arguments.length - 2;" +
+            "observeUntil(function() {" +
+            "    return unmetStates(args, count).length === 0 ? [] : null;" +
+            "  }, args[count], function() { return unmetStates(args, count); }, args[args.length - 1]);";
+
+    /**
+     * Scans the page for forbidden terms without sending the page back.
+     * Arguments: regex source, list of page hashes already known to be clean.
+     * Returns [hash, null, null] for a clean (or already known) page, [hash, match, snippet] on a match,
+     * or null if the regex isn't valid javascript. The hash is the 53 bit key of the page's outerHTML that
+     * ForbiddenTermsScanner.hash computes.
+     */
+    public static final String SCAN_FORBIDDEN_TERMS =
+            "var source = document.documentElement ? document.documentElement.outerHTML : '';" +
+            "var fnv = 0x811c9dc5, javaHash = 0;" +
+            "for (var i = 0; i < source.length; i++) {" +
+            "  var c = source.charCodeAt(i);" +
+            "  fnv = Math.imul(fnv ^ c, 0x01000193);" +
+            "  javaHash = (Math.imul(javaHash, 31) + c) | 0;" +
+            "}" +
+            "var hash = (javaHash & 0x1fffff) * 4294967296 + (fnv >>> 0);" +
+            "var known = arguments[1];" +
+            "for (var k = 0; k < known.length; k++) {" +
+            "  if (known[k] === hash) return [hash, null, null];" +
+            "}" +
+            "var regex;" +
+            "try { regex = new RegExp(arguments[0]); } catch (e) { return null; }" +
+            "var match = regex.exec(source);" +
+            "if (!match) return [hash, null, null];" +
+            "return [hash, match[0], source.substring(Math.max(0, match.index - 75)," +
+            "    Math.min(source.length, match.index + match[0].length + 75))];";
+
+    /**
+     * Returns [localStorage entries, sessionStorage entries, current URL].
+     */
+    public static final String CAPTURE_STORAGE =
+            "function dump(storage) {" +
+            "  var entries = {};" +
+            "  for (var i = 0; i < storage.length; i++) {" +
+            "    var key = storage.key(i);" +
+            "    entries[key] = storage.getItem(key);" +
+            "  }" +
+            "  return entries;" +
+            "}" +
+            "return [dump(window.localStorage), dump(window.sessionStorage), window.location.href];";
+
+    /**
+     * Replaces the contents of localStorage and sessionStorage with the entries passed as arguments[0] and arguments[1].
+     */
+    public static final String RESTORE_STORAGE =
+            "function load(storage, entries) {" +
+            "  storage.clear();" +
+            "  for (var key in entries) {" +
+            "    if (entries.hasOwnProperty(key)) storage.setItem(key, entries[key]);" +
+            "  }" +
+            "}" +
+            "load(window.localStorage, arguments[0]);" +
+            "load(window.sessionStorage, arguments[1]);";
+
+    /**
+     * Returns [title, URL] of the current window in one round trip.
+     */
+    public static final String WINDOW_INFO = "return [document.title, window.location.href];";
+
+    /**
+     * Collects Navigation, Paint and Resource Timing of the current document, in milliseconds since navigation start.
+     * Returns null if the browser has no performance API, the document hasn't finished loading (its timings are
+     * collected by a later call) or the document's timings were already collected.
+     */
+    public static final String PAGE_TIMINGS =
+            "if (!window.performance || window.__pageTimingsCollected) return null;" +
+            "var timings = {};" +
+            "var byType = function(type) { return performance.getEntriesByType ? performance.getEntriesByType(type) : []; };" +
+            "var navigation = byType('navigation')[0];" +
+            "if (navigation) {" +
+            "  timings.ttfb = navigation.responseStart;" +
+            "  timings.domInteractive = navigation.domInteractive;" +
+            "  timings.domContentLoaded = navigation.domContentLoadedEventEnd;" +
+            "  timings.load = navigation.loadEventEnd;" +
+            "} else if (performance.timing) {" +
+            "  var legacy = performance.timing, start = legacy.navigationStart;" +
+            "  timings.ttfb = legacy.responseStart - start;" +
+            "  timings.domInteractive = legacy.domInteractive - start;" +
+            "  timings.domContentLoaded = legacy.domContentLoadedEventEnd - start;" +
+            "  timings.load = legacy.loadEventEnd - start;" +
+            "}" +
+            "if (!(timings.load > 0)) return null;" + // loadEventEnd is 0 until the load event has finished
+            "window.__pageTimingsCollected = true;" +
+            "var paints = byType('paint');" +
+            "for (var i = 0; i < paints.length; i++) {" +
+            "  if (paints[i].name === 'first-paint') timings.firstPaint = paints[i].startTime;" +
+            "  if (paints[i].name === 'first-contentful-paint') timings.firstContentfulPaint = paints[i].startTime;" +
+            "}" +
+            "var resources = byType('resource'), bytes = 0, slowest = null;" +
+            "for (var j = 0; j < resources.length; j++) {" +
+            "  bytes += resources[j].transferSize || 0;" +
+            "  if (!slowest || resources[j].duration > slowest.duration) slowest = resources[j];" +
+            "}" +
+            "timings.resourceCount = resources.length;" +
+            "timings.resourceBytes = bytes;" +
+            "if (slowest) {" +
+            "  timings.slowestResource = slowest.duration;" +
+            "  timings.slowestResourceName = slowest.name;" +
+            "}" +
+            "return timings;";
+
+    /**
+     * Converts locators into the flat (strategy, selector) argument list the scripts above expect.
+     * @param locators locators to convert, should already have any variables substituted
+     * @return argument list to pass to executeScript
+     */
+    public static List<Object> locatorArguments(Locator... locators) {
+        List<Object> arguments = new ArrayList<>(locators.length * 2);
+        for (Locator locator : locators) {
+            CompiledLocator compiled = locator.compiled();
+            switch (compiled.strategy) {
+                case XPATH:
+                    arguments.add("xpath");
+                    break;
+                case CSS:
+                    arguments.add("css");
+                    break;
+                default:
+                    throw new WebDriverException("Unknown locator type used for locator: " + locator.toString());
+            }
+            arguments.add(compiled.selector);
+        }
+        return arguments;
+    }
+}
@@ -0,0 +1,128 @@
+package SeleniumHelpers;
+
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsElement;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Element handed out by the Driver element cache. If the page re-rendered the element since it was cached,
+ * a StaleElementReferenceException causes the locator to be re-resolved and the call to be retried, as the
+ * Driver's StaleElementRetry policy allows.
+ * Implements WrapsElement, so it can still be passed to executeScript and compared with plain elements.
+ */
+public class CachedWebElement implements WebElement, WrapsElement {
+    private final Driver driver;
+    private final By by;
+    private volatile WebElement element;
+
+    CachedWebElement(Driver driver, By by, WebElement element) {
+        this.driver = driver;
+        this.by = by;
+        this.element = element;
+    }
+
+    private <T> T withRefresh(Function<WebElement, T> action) {
+        String locatorName = Driver.locatorName(by);
+        return driver.getStaleRetry().run(locatorName != null ? locatorName : by.toString(), () -> action.apply(element), () -> {
+            element = driver.getWebDriver().findElement(by);
+            driver.recordElementCacheRefresh();
+        });
+    }
+
+    public WebElement getWrappedElement() {
+        return element;
+    }
+
+    public void click() {
+        withRefresh(e -> { e.click(); return null; });
+    }
+
+    public void submit() {
+        withRefresh(e -> { e.submit(); return null; });
+    }
+
+    public void sendKeys(CharSequence... keysToSend) {
+        withRefresh(e -> { e.sendKeys(keysToSend); return null; });
+    }
+
+    public void clear() {
+        withRefresh(e -> { e.clear(); return null; });
+    }
+
+    public String getTagName() {
+        return withRefresh(WebElement::getTagName);
+    }
+
+    public String getAttribute(String name) {
+        return withRefresh(e -> e.getAttribute(name));
+    }
+
+    public boolean isSelected() {
+        return withRefresh(WebElement::isSelected);
+    }
+
+    public boolean isEnabled() {
+        return withRefresh(WebElement::isEnabled);
+    }
+
+    public String getText() {
+        return withRefresh(WebElement::getText);
+    }
+
+    public List<WebElement> findElements(By childBy) {
+        return withRefresh(e -> e.findElements(childBy));
+    }
+
+    public WebElement findElement(By childBy) {
+        return withRefresh(e -> e.findElement(childBy));
+    }
+
+    public boolean isDisplayed() {
+        return withRefresh(WebElement::isDisplayed);
+    }
+
+    public Point getLocation() {
+        return withRefresh(WebElement::getLocation);
+    }
+
+    public Dimension getSize() {
+        return withRefresh(WebElement::getSize);
+    }
+
+    public Rectangle getRect() {
+        return withRefresh(WebElement::getRect);
+    }
+
+    public String getCssValue(String propertyName) {
+        return withRefresh(e -> e.getCssValue(propertyName));
+    }
+
+    public <X> X getScreenshotAs(OutputType<X> target) throws WebDriverException {
+        return withRefresh(e -> e.getScreenshotAs(target));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        Object otherElement = other instanceof WrapsElement ? ((WrapsElement) other).getWrappedElement() : other;
+        return element.equals(otherElement);
+    }
+
+    @Override
+    public int hashCode() {
+        return element.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Cached " + element.toString();
+    }
+}
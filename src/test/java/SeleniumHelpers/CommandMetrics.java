@@ -0,0 +1,87 @@
+package SeleniumHelpers;
+
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms for the commands a Driver sends, per command and per command and Locator name,
+ * e.g. "findElement" and "findElement[USERNAME_FIELD]".
+ */
+public class CommandMetrics {
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> pollTotals = new ConcurrentHashMap<>();
+
+    /**
+     * @param command wrapped Driver operation, e.g. findElement
+     * @param locatorName name of the locator used, or null if the command doesn't use one
+     * @param nanos time the command took
+     */
+    public void record(String command, String locatorName, long nanos) {
+        histograms.computeIfAbsent(command, key -> new LatencyHistogram()).recordNanos(nanos);
+        if (locatorName != null) {
+            histograms.computeIfAbsent(command + "[" + locatorName + "]", key -> new LatencyHistogram()).recordNanos(nanos);
+        }
+    }
+
+    /**
+     * Records a wait: how long it took to be satisfied (or time out) and how many times the condition was polled.
+     */
+    public void recordWait(String command, String locatorName, long nanos, int polls) {
+        record(command, locatorName, nanos);
+        pollTotals.computeIfAbsent(command, key -> new AtomicLong()).addAndGet(polls);
+        if (locatorName != null) {
+            pollTotals.computeIfAbsent(command + "[" + locatorName + "]", key -> new AtomicLong()).addAndGet(polls);
+        }
+    }
+
+    public LatencyHistogram getHistogram(String key) {
+        return histograms.get(key);
+    }
+
+    /**
+     * Locators with variables are named NAME(var1, var2), strip the variables so all uses of a locator add up.
+     */
+    static String templateName(String locatorName) {
+        int variablesStart = locatorName.indexOf('(');
+        return variablesStart > 0 ? locatorName.substring(0, variablesStart) : locatorName;
+    }
+
+    /**
+     * @return table of all recorded commands, the ones that took the most time in total first
+     */
+    public String report() {
+        List<Map.Entry<String, LatencyHistogram>> entries = new ArrayList<>(histograms.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().getTotalMicros(), a.getValue().getTotalMicros()));
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-60s %8s %10s %10s %10s %10s %12s %10s%n",
+                "command", "count", "p50 ms", "p90 ms", "p99 ms", "max ms", "total ms", "avg polls"));
+        for (Map.Entry<String, LatencyHistogram> entry : entries) {
+            LatencyHistogram histogram = entry.getValue();
+            AtomicLong polls = pollTotals.get(entry.getKey());
+            report.append(String.format("%-60s %8d %10.1f %10.1f %10.1f %10.1f %12.1f %10s%n", entry.getKey(),
+                    histogram.getCount(),
+                    histogram.getPercentileMicros(50) / 1000.0,
+                    histogram.getPercentileMicros(90) / 1000.0,
+                    histogram.getPercentileMicros(99) / 1000.0,
+                    histogram.getMaxMicros() / 1000.0,
+                    histogram.getTotalMicros() / 1000.0,
+                    polls == null ? "-" : String.format("%.1f", (double) polls.get() / histogram.getCount())));
+        }
+        return report.toString();
+    }
+
+    public void writeReport(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(report());
+        }
+    }
+}
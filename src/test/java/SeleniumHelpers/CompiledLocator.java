@@ -0,0 +1,144 @@
+package SeleniumHelpers;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed form of a Locator's text: the lookup strategy (from the css=/xpath= prefix) and the {N} placeholder slots.
+ * Parsing happens once per locator text, after that variables are substituted without any regex or String.replace.
+ * Locator caches its compiled form, see Locator.compiled().
+ */
+final class CompiledLocator {
+
+    enum Strategy {
+        XPATH,
+        CSS,
+        UNKNOWN;
+    }
+
+    private static final String[] NO_LITERALS = new String[0];
+    private static final int[] NO_SLOTS = new int[0];
+
+    final String source;
+    final Strategy strategy;
+    final String selector;      // locator text without the strategy prefix
+    private final String[] literals; // text between slots, always one more than slots
+    private final int[] slots;       // slot numbers in order of appearance, 0 for an unnumbered {}
+
+    private CompiledLocator(String source, Strategy strategy, String selector, String[] literals, int[] slots) {
+        this.source = source;
+        this.strategy = strategy;
+        this.selector = selector;
+        this.literals = literals;
+        this.slots = slots;
+    }
+
+    static CompiledLocator compile(String locatorText) {
+        Strategy strategy;
+        String selector;
+        if (locatorText.regionMatches(true, 0, "xpath=", 0, 6)) {
+            strategy = Strategy.XPATH;
+            selector = locatorText.substring(6);
+        }
+        else if (locatorText.regionMatches(true, 0, "css=", 0, 4)) {
+            strategy = Strategy.CSS;
+            selector = locatorText.substring(4);
+        }
+        else {
+            strategy = Strategy.UNKNOWN;
+            selector = locatorText;
+        }
+
+        List<String> literals = null;
+        List<Integer> slots = null;
+        int literalStart = 0;
+        for (int open = locatorText.indexOf('{'); open >= 0; open = locatorText.indexOf('{', open + 1)) {
+            int close = open + 1;
+            int slot = 0;
+            while (close < locatorText.length() && Character.isDigit(locatorText.charAt(close))) {
+                slot = slot * 10 + (locatorText.charAt(close) - '0');
+                close++;
+            }
+            if (close >= locatorText.length() || locatorText.charAt(close) != '}') {
+                continue; // a brace that isn't a placeholder, e.g. inside an xpath string
+            }
+            if (literals == null) {
+                literals = new ArrayList<>();
+                slots = new ArrayList<>();
+            }
+            literals.add(locatorText.substring(literalStart, open));
+            slots.add(slot);
+            literalStart = close + 1;
+            open = close;
+        }
+        if (literals == null) {
+            return new CompiledLocator(locatorText, strategy, selector, NO_LITERALS, NO_SLOTS);
+        }
+        literals.add(locatorText.substring(literalStart));
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+        return new CompiledLocator(locatorText, strategy, selector, literals.toArray(NO_LITERALS), slotArray);
+    }
+
+    boolean hasSlots() {
+        return slots.length > 0;
+    }
+
+    /**
+     * Substitutes the variables into the slots. A single variable also fills unnumbered {} slots.
+     * @param template the locator this was compiled from, used for the name and error messages
+     * @param variables values for slots {1}..{N}
+     * @return a new, already compiled locator named template.name(var1, var2, ...)
+     */
+    Locator resolve(Locator template, String... variables) {
+        int totalVars = variables.length;
+        int capacity = source.length();
+        for (String variable : variables) {
+            capacity += variable.length();
+        }
+        StringBuilder text = new StringBuilder(capacity);
+        long usedVariables = 0; // bit per variable, only used for the unused variable warning
+        for (int i = 0; i < slots.length; i++) {
+            text.append(literals[i]);
+            int slot = slots[i] == 0 && totalVars == 1 ? 1 : slots[i];
+            if (slot < 1 || slot > totalVars) {
+                throw new TestError("TEST/LOCATOR ERROR: Insufficient parameters supplied for dynamic locator");
+            }
+            text.append(variables[slot - 1]);
+            if (slot <= 64) {
+                usedVariables |= 1L << (slot - 1);
+            }
+        }
+        if (slots.length > 0) {
+            text.append(literals[slots.length]);
+        }
+        else {
+            text.append(source);
+        }
+        if (Long.bitCount(usedVariables) < Math.min(totalVars, 64)) {
+            Using.warn("WARNING: Some of the supplied variables are NOT used by the locator: " + template.toString());
+        }
+
+        StringBuilder name = new StringBuilder(template.name.length() + capacity - source.length() + 2 * totalVars + 2);
+        name.append(template.name);
+        if (totalVars > 0) {
+            name.append('(');
+            for (int i = 0; i < totalVars; i++) {
+                if (i > 0) {
+                    name.append(", ");
+                }
+                name.append(variables[i]);
+            }
+            name.append(')');
+        }
+
+        String resolvedText = text.toString();
+        int prefixLength = source.length() - selector.length();
+        Locator resolved = new Locator(name.toString(), resolvedText);
+        resolved.setCompiled(new CompiledLocator(resolvedText, strategy, resolvedText.substring(prefixLength), NO_LITERALS, NO_SLOTS));
+        return resolved;
+    }
+}
@@ -0,0 +1,106 @@
+package SeleniumHelpers;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class CompiledLocatorTest {
+
+    @Test
+    public void resolvesZeroToFiveVariables() {
+        for (int count = 0; count <= 5; count++) {
+            StringBuilder text = new StringBuilder("css=table");
+            StringBuilder expectedText = new StringBuilder("css=table");
+            StringBuilder expectedName = new StringBuilder("CELLS");
+            String[] variables = new String[count];
+            for (int i = 0; i < count; i++) {
+                variables[i] = "v" + (i + 1);
+                text.append(" > .c{").append(i + 1).append('}');
+                expectedText.append(" > .cv").append(i + 1);
+                expectedName.append(i == 0 ? "(" : ", ").append("v").append(i + 1);
+            }
+            if (count > 0) {
+                expectedName.append(')');
+            }
+            Locator resolved = resolve(new Locator("CELLS", text.toString()), variables);
+            assertEquals(expectedText.toString(), resolved.locatorText);
+            assertEquals(expectedName.toString(), resolved.name);
+        }
+    }
+
+    @Test
+    public void slotsCanRepeatAndComeInAnyOrder() {
+        Locator resolved = resolve(new Locator("ROW", "xpath=//tr[{2}]/td[{1}][@class='{2}']"), "a", "b");
+        assertEquals("xpath=//tr[b]/td[a][@class='b']", resolved.locatorText);
+    }
+
+    @Test
+    public void unnumberedAndZeroSlotsTakeASingleVariable() {
+        assertEquals("css=#x", resolve(new Locator("ID", "css=#{}"), "x").locatorText);
+        assertEquals("css=#x.x", resolve(new Locator("ID", "css=#{0}.{}"), "x").locatorText);
+    }
+
+    @Test(expected = TestError.class)
+    public void unnumberedSlotWithSeveralVariablesIsAnError() {
+        resolve(new Locator("ID", "css=#{}"), "x", "y");
+    }
+
+    @Test(expected = TestError.class)
+    public void missingVariableIsAnError() {
+        resolve(new Locator("ROW", "css=tr:nth-child({1}) td:nth-child({3})"), "1", "2");
+    }
+
+    @Test(expected = TestError.class)
+    public void slotWithoutVariablesIsAnError() {
+        resolve(new Locator("ID", "css=#{1}"));
+    }
+
+    @Test
+    public void bracesThatAreNotSlotsAreKept() {
+        Locator resolved = resolve(new Locator("LINK", "xpath=//a[@data-x='{x}'][@data-y='{'][@data-z='{1'][{1}]{"), "2");
+        assertEquals("xpath=//a[@data-x='{x}'][@data-y='{'][@data-z='{1'][2]{", resolved.locatorText);
+        assertFalse(CompiledLocator.compile("xpath=//a[@data-x='{x}'][@data-y='{']").hasSlots());
+    }
+
+    @Test
+    public void multiDigitSlots() {
+        String[] variables = new String[12];
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = "v" + (i + 1);
+        }
+        Locator resolved = resolve(new Locator("DEEP", "css=.{12}.{1}.{10}.{2}.{3}.{4}.{5}.{6}.{7}.{8}.{9}.{11}"), variables);
+        assertEquals("css=.v12.v1.v10.v2.v3.v4.v5.v6.v7.v8.v9.v11", resolved.locatorText);
+    }
+
+    @Test
+    public void variablesAreNotSubstitutedAgain() {
+        Locator resolved = resolve(new Locator("PAIR", "css=.{1}-{2}"), "{2}", "b");
+        assertEquals("css=.{2}-b", resolved.locatorText);
+        assertFalse(resolved.compiled().hasSlots());
+    }
+
+    @Test
+    public void resolvedLocatorKeepsTheStrategy() {
+        CompiledLocator resolved = resolve(new Locator("CELL", "XPATH=//td[{1}]"), "3").compiled();
+        assertEquals(CompiledLocator.Strategy.XPATH, resolved.strategy);
+        assertEquals("//td[3]", resolved.selector);
+        CompiledLocator css = resolve(new Locator("CELL", "css=td:nth-child({1})"), "3").compiled();
+        assertEquals(CompiledLocator.Strategy.CSS, css.strategy);
+        assertEquals("td:nth-child(3)", css.selector);
+    }
+
+    @Test
+    public void locatorWithoutSlotsOrVariablesIsReturnedAsIs() {
+        Locator locator = new Locator("BUTTON", "css=button.submit");
+        assertSame(locator, Using.processVariableLocator(locator));
+        assertEquals(CompiledLocator.Strategy.CSS, locator.compiled().strategy);
+        assertEquals("button.submit", locator.compiled().selector);
+    }
+
+    private static Locator resolve(Locator template, String... variables) {
+        return Using.processVariableLocator(template, variables);
+    }
+}
@@ -0,0 +1,182 @@
+package SeleniumHelpers;
+
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Event-driven element waits: a MutationObserver installed with executeAsyncScript resolves the moment the element
+ * reaches the wanted state, instead of polling findElement over the wire.
+ * Falls back to AdaptiveWait polling for the remaining milliseconds if the script can't run, e.g. the page navigated
+ * away during the wait or the browser doesn't support async scripts.
+ * Can be switched off with EventDrivenWaits=FALSE.
+ */
+public class DomWaits {
+
+    public enum State {
+        PRESENT,
+        VISIBLE,
+        INVISIBLE,
+        ANY_VISIBLE;
+    }
+
+    private static final long SCRIPT_TIMEOUT_MARGIN_MILLIS = 5000;
+    private final Driver driver;
+    private final boolean enabled = Settings.getBoolean("EventDrivenWaits", true);
+    private long scriptTimeoutMillis = -1;
+
+    public DomWaits(Driver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Waits for the locator to reach the state.
+     * @param locator locator with any variables already substituted
+     * @param state state to wait for
+     * @param timeoutMillis how long to wait
+     * @param polls incremented by how many times the browser was asked, 1 if the event-driven wait answered it
+     * @return the element (the first visible one for ANY_VISIBLE), or null when waiting for INVISIBLE
+     * @throws TimeoutException if the state wasn't reached in time
+     */
+    public WebElement await(Locator locator, State state, long timeoutMillis, AtomicInteger polls) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        WebDriver webDriver = driver.getWebDriver();
+        if (enabled && webDriver instanceof JavascriptExecutor) {
+            polls.incrementAndGet();
+            try {
+                List<?> result = observe((JavascriptExecutor) webDriver, locator, state, timeoutMillis);
+                if (Boolean.TRUE.equals(result.get(0))) {
+                    return (WebElement) result.get(1);
+                }
+                throw new TimeoutException("Timed out after " + timeoutMillis + " ms waiting for " + locator + " to be " + state);
+            }
+            catch (TimeoutException e) {
+                throw e;
+            }
+            catch (WebDriverException e) {
+                K1Logger.info(driver.getLogger(), () -> "Event-driven wait for " + locator.name + " failed, poll instead: " + e.getMessage());
+            }
+        }
+        return poll(webDriver, locator, state, Math.max(0, deadline - System.currentTimeMillis()), polls);
+    }
+
+    /**
+     * Waits for all conditions together: one observer in the browser, one overall deadline.
+     * When falling back to polling, each poll checks all conditions in a single script call.
+     * @param conditions conditions with any locator variables already substituted
+     * @param timeoutMillis how long to wait for all of them
+     * @param polls incremented by how many times the browser was asked
+     * @return the conditions that were still unmet at the deadline, empty if all were met
+     */
+    public List<PageCondition> awaitAll(List<PageCondition> conditions, long timeoutMillis, AtomicInteger polls) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        WebDriver webDriver = driver.getWebDriver();
+        if (!(webDriver instanceof JavascriptExecutor)) {
+            throw new TestError("Page readiness checks need a driver that can execute javascript.");
+        }
+        JavascriptExecutor executor = (JavascriptExecutor) webDriver;
+        List<Object> arguments = new ArrayList<>(conditions.size() * 3 + 1);
+        for (PageCondition condition : conditions) {
+            arguments.addAll(BrowserScripts.locatorArguments(condition.locator));
+            arguments.add(condition.state.name());
+        }
+        if (enabled) {
+            polls.incrementAndGet();
+            try {
+                setScriptTimeout(timeoutMillis);
+                List<Object> asyncArguments = new ArrayList<>(arguments);
+                asyncArguments.add(timeoutMillis);
+                return toConditions(conditions, (List<?>) executor.executeAsyncScript(BrowserScripts.WAIT_FOR_ALL_STATES, asyncArguments.toArray()));
+            }
+            catch (WebDriverException e) {
+                K1Logger.info(driver.getLogger(), () -> "Event-driven page readiness check failed, poll instead: " + e.getMessage());
+            }
+        }
+        List<List<PageCondition>> unmet = new ArrayList<>(1);
+        unmet.add(conditions);
+        AdaptiveWait wait = new AdaptiveWait(webDriver, Math.max(0, deadline - System.currentTimeMillis()));
+        try {
+            wait.until(d -> {
+                try {
+                    unmet.set(0, toConditions(conditions, (List<?>) executor.executeScript(BrowserScripts.UNMET_STATES, arguments.toArray())));
+                }
+                catch (WebDriverException e) { // e.g. page still navigating, count everything as unmet and try again
+                    unmet.set(0, conditions);
+                }
+                return unmet.get(0).isEmpty();
+            });
+        }
+        catch (TimeoutException e) {
+            // report whatever was still unmet at the last poll
+        }
+        finally {
+            polls.addAndGet(wait.getPollCount());
+        }
+        return unmet.get(0);
+    }
+
+    private static List<PageCondition> toConditions(List<PageCondition> conditions, List<?> indexes) {
+        List<PageCondition> selected = new ArrayList<>(indexes.size());
+        for (Object index : indexes) {
+            selected.add(conditions.get(((Number) index).intValue()));
+        }
+        return selected;
+    }
+
+    private void setScriptTimeout(long timeoutMillis) {
+        long neededScriptTimeout = timeoutMillis + SCRIPT_TIMEOUT_MARGIN_MILLIS;
+        if (neededScriptTimeout > scriptTimeoutMillis) { // only costs a round trip when a longer wait than before comes along
+            driver.getWebDriver().manage().timeouts().setScriptTimeout(neededScriptTimeout, TimeUnit.MILLISECONDS);
+            scriptTimeoutMillis = neededScriptTimeout;
+        }
+    }
+
+    private List<?> observe(JavascriptExecutor executor, Locator locator, State state, long timeoutMillis) {
+        setScriptTimeout(timeoutMillis);
+        List<Object> arguments = BrowserScripts.locatorArguments(locator);
+        arguments.add(state.name());
+        arguments.add(timeoutMillis);
+        return (List<?>) executor.executeAsyncScript(BrowserScripts.WAIT_FOR_STATE, arguments.toArray());
+    }
+
+    private WebElement poll(WebDriver webDriver, Locator locator, State state, long timeoutMillis, AtomicInteger polls) {
+        AdaptiveWait wait = new AdaptiveWait(webDriver, timeoutMillis).withMessage(locator + " to be " + state);
+        try {
+            return poll(wait, locator, state);
+        }
+        finally {
+            polls.addAndGet(wait.getPollCount());
+        }
+    }
+
+    private static WebElement poll(AdaptiveWait wait, Locator locator, State state) {
+        switch (state) {
+            case PRESENT:
+                return wait.until(ExpectedConditions.presenceOfElementLocated(Using.locator(locator)));
+            case VISIBLE:
+                return wait.until(ExpectedConditions.visibilityOfElementLocated(Using.locator(locator)));
+            case INVISIBLE:
+                wait.until(ExpectedConditions.invisibilityOfElementLocated(Using.locator(locator)));
+                return null;
+            default:
+                return wait.until((ExpectedCondition<WebElement>) d -> {
+                    for (WebElement element : d.findElements(Using.locator(locator))) {
+                        if (element.isDisplayed()) {
+                            return element;
+                        }
+                    }
+                    return null;
+                });
+        }
+    }
+}
@@ -3,9 +3,9 @@ package SeleniumHelpers;
 
 import PageObjects.*;
 import SeleniumHelpers.*;
+import com.gargoylesoftware.htmlunit.BrowserVersion;
 import io.appium.java_client.AppiumDriver;
 import io.appium.java_client.ios.IOSDriver;
-import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -16,7 +16,7 @@ import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.firefox.FirefoxDriver;
 import org.openqa.selenium.firefox.FirefoxOptions;
-import org.openqa.selenium.firefox.FirefoxProfile;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
 import org.openqa.selenium.ie.InternetExplorerDriver;
 import org.openqa.selenium.logging.LogType;
 import org.openqa.selenium.logging.LoggingPreferences;
@@ -24,14 +24,23 @@ import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 import static org.junit.Assert.fail;
@@ -40,6 +49,7 @@ public class Driver extends Thread implements WebDriver {
     private static String SCREEN_SIZE = SessionProperties.getInstance().getProperty("ScreenSize");
     private final LoggingPreferences seleniumLogPreferences = new LoggingPreferences();
     private Logger logger;
+    private String logName;
     private String uniqueID = Generator.generateUniqueAlphaString(); // this is to identify a specific driver in a pool of drivers
     private WebDriver driver;
     private Boolean isMobile = null;
@@ -47,6 +57,22 @@ public class Driver extends Thread implements WebDriver {
     private boolean retryTriggered = false;
     public Eyes eyes = new Eyes();
     private boolean isRemote = false;
+    private boolean elementCacheEnabled = Settings.getBoolean("ElementCache", false);
+    private final Map<String, CachedWebElement> elementCache = new ConcurrentHashMap<>();
+    private final AtomicLong elementCacheHits = new AtomicLong();
+    private final AtomicLong elementCacheMisses = new AtomicLong();
+    private final AtomicLong elementCacheRefreshes = new AtomicLong();
+    private final CommandMetrics metrics = new CommandMetrics();
+    private final DomWaits domWaits = new DomWaits(this);
+    private File profileCopy = null;
+    private final WindowRegistry windows = new WindowRegistry(this);
+    private final StaleElementRetry staleRetry = new StaleElementRetry(this);
+    private NetworkCapture network = null;
+    private final ScreenshotWriter screenshots = new ScreenshotWriter(this);
+    private volatile AsyncDriver async = null;
+    private static final long ASYNC_DRAIN_TIMEOUT_MILLIS = 60000;
+    private static final DateTimeFormatter SCREENSHOT_DATE_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd_HH_mm_ss");
+    private static final long SCREENSHOT_WRITE_TIMEOUT_MILLIS = 30000;
 
     public enum ScreenSize {
         FULLSIZE,
@@ -78,17 +104,51 @@ public class Driver extends Thread implements WebDriver {
      *
      */
     public Driver(String loggerName) {
+        this(loggerName, getDefaultBrowserType());
+    }
+
+    /**
+     * Initialises the Driver object with the given browser, e.g. HTML_UNIT for in-process sessions
+     * regardless of the Webdriver.Browser setting.
+     * @param loggerName name of the apache logger (and its log file)
+     * @param browserType browser to launch
+     */
+    public Driver(String loggerName, BrowserType browserType) {
         setLogger(loggerName);
         String host = SessionProperties.getInstance().getProperty("BrowserHost"); //System.getProperty(DRIVER_HOST_PROPERTY);
+        chosenBrowserType = browserType;
+        // logging preferences are passed to the browser at init, so they have to be complete before it
+        seleniumLogPreferences.enable(LogType.DRIVER, Level.ALL);
+        if(Settings.getBoolean("NetworkTrafficCapture", false)) {
+            seleniumLogPreferences.enable(LogType.PERFORMANCE, Level.ALL);
+            network = new NetworkCapture(this);
+        }
+        if(host!= null && host.equals("SAUCELABS")) {
+            driver = initRemote(chosenBrowserType);
+        }
+        else {
+            if(chosenBrowserType == BrowserType.ANDROID || chosenBrowserType == BrowserType.IPAD || chosenBrowserType == BrowserType.IPHONE) {
+                throw new TestError(chosenBrowserType + " tests can only be run through SauceLabs.");
+            }
+            driver = initLocal(chosenBrowserType);
+        }
+    }
 
+    /**
+     * @return browser from the Webdriver.Browser system property, else the BrowserType session property, else Firefox
+     */
+    private static BrowserType getDefaultBrowserType() {
         //get some relevant properties from Maven command line
         String profileBrowserSetting = SessionProperties.getInstance().getProperty("BrowserType");
         String defaultBrowser = System.getProperty("Webdriver.Browser", profileBrowserSetting.startsWith("$")?"FIREFOX":profileBrowserSetting);
 
         //convert command line argument to internal BrowserType
+        BrowserType chosenBrowserType = null;
         if(defaultBrowser.equals("ANDROID")) chosenBrowserType = BrowserType.ANDROID;
         else if(defaultBrowser.equals("CHROME")) chosenBrowserType = BrowserType.CHROME;
+        else if(defaultBrowser.equals("CHROME_HEADLESS")) chosenBrowserType = BrowserType.CHROME_HEADLESS;
         else if (defaultBrowser.equals("FIREFOX")) chosenBrowserType = BrowserType.FIREFOX;
+        else if (defaultBrowser.equals("FIREFOX_HEADLESS")) chosenBrowserType = BrowserType.FIREFOX_HEADLESS;
         else if(defaultBrowser.equals("INTERNET_EXPLORER")) chosenBrowserType = BrowserType.INTERNET_EXPLORER;
         else if(defaultBrowser.equals("IPAD")) chosenBrowserType = BrowserType.IPAD;
         else if(defaultBrowser.equals("IPHONE")) chosenBrowserType = BrowserType.IPHONE;
@@ -98,17 +158,19 @@ public class Driver extends Thread implements WebDriver {
 
         if(chosenBrowserType == null)
             throw new TestError("Unknown browser type requested: " + defaultBrowser);
-        if(host!= null && host.equals("SAUCELABS")) {
-            driver = initRemote(chosenBrowserType);
-        }
-        else {
-            if(chosenBrowserType == BrowserType.ANDROID || chosenBrowserType == BrowserType.IPAD || chosenBrowserType == BrowserType.IPHONE) {
-                throw new TestError(defaultBrowser + " tests can only be run through SauceLabs.");
-            }
-            driver = initLocal(chosenBrowserType);
-        }
+        return chosenBrowserType;
+    }
 
-        seleniumLogPreferences.enable(LogType.DRIVER, Level.ALL);
+    /**
+     * Wraps an already initialised WebDriver instead of launching a browser,
+     * e.g. an in-process stub so that benchmarks measure only the cost of this framework.
+     * @param loggerName name of the apache logger (and its log file)
+     * @param webDriver driver to wrap
+     */
+    public Driver(String loggerName, WebDriver webDriver) {
+        setLogger(loggerName);
+        driver = webDriver;
+        isMobile = false;
     }
 
     public boolean isRemote() {
@@ -116,11 +178,18 @@ public class Driver extends Thread implements WebDriver {
     }
 
     /**
-     * set the apache logger logger for this instance using the name provided
+     * set the apache logger logger for this instance using the name provided.
+     * With LogChannels=TRUE the driver logs through its own channel (keyed by getID()) of that log file.
      * @param loggerName
      */
     public void setLogger(String loggerName) {
-        logger = new K1Logger().setUpLogger(loggerName);
+        logName = loggerName;
+        if (K1Logger.isChannelLogging()) {
+            logger = new K1Logger().setUpChannel(loggerName, getID());
+        }
+        else {
+            logger = new K1Logger().setUpLogger(loggerName);
+        }
     }
 
     /**
@@ -133,70 +202,179 @@ public class Driver extends Thread implements WebDriver {
         return logger;
     }
 
+    /**
+     * Tells the driver that a page object finished loading, so the network capture can drain and name the page.
+     * @param pageName e.g. LandingPage
+     */
+    public void pageLoaded(String pageName) {
+        if (network != null) {
+            network.pageLoaded(pageName);
+        }
+    }
+
+    /**
+     * Non-blocking facade of this driver, its commands run on this driver's own thread, started on first use.
+     */
+    public synchronized AsyncDriver async() {
+        if (async == null) {
+            async = new AsyncDriver(this);
+            setName("driver-" + getID());
+            setDaemon(true);
+            start();
+        }
+        return async;
+    }
+
+    /**
+     * Waits for the commands queued through async() to run.
+     * @return false if some were still queued or running after the timeout
+     */
+    public boolean awaitAsyncCommands(long timeoutMillis) {
+        AsyncDriver current = async;
+        return current == null || current.awaitIdle(timeoutMillis);
+    }
+
+    /**
+     * Services the async() command queue, don't call this directly.
+     */
+    @Override
+    public void run() {
+        if (async != null) {
+            async.serviceCommands();
+        }
+    }
+
+    /**
+     * @return name of the log file this driver logs to, without the channel id the logger name may have
+     */
+    public String getLogName() {
+        return logName;
+    }
+
     public String getID() {
         return uniqueID;
     }
 
+    /**
+     * Probes the browser the same way initLocal does before re-using a window.
+     * @return true if the browser session still responds, else false
+     */
+    public boolean isHealthy() {
+        try {
+            driver.getWindowHandle();
+            return true;
+        }
+        catch (Exception e) {
+            getLogger().info("Driver " + getID() + " failed health check: " + e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Clears cookies, localStorage and sessionStorage, so that the next user of this session doesn't start out
+     * logged in as the previous one. Storage is cleared for the page currently loaded.
+     * @return false if the browser no longer responds
+     */
+    public boolean resetSession() {
+        invalidateElementCache();
+        try {
+            driver.manage().deleteAllCookies();
+            if (driver instanceof JavascriptExecutor) {
+                ((JavascriptExecutor) driver).executeScript("try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) {}");
+            }
+            return true;
+        }
+        catch (Exception e) {
+            getLogger().info("Driver " + getID() + " failed to reset its session: " + e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Points the webdriver.*.driver system property at the driver binary shipped in src/main/resources/drivers,
+     * unless it was already given on the command line. The .exe extension is only used on Windows.
+     */
+    private static void setDriverBinary(String systemProperty, String binaryName) {
+        if (System.getProperty(systemProperty) != null)
+            return;
+        String path = "src/main/resources/drivers/" + binaryName;
+        if (System.getProperty("os.name").toLowerCase().contains("win")) {
+            path = path + ".exe";
+        }
+        System.setProperty(systemProperty, new File(path).getAbsolutePath());
+    }
+
+    /**
+     * Chrome flags that make startup cheaper and behaviour repeatable on CI machines.
+     */
+    private static void addFastStartupArguments(ChromeOptions chromeOptions) {
+        chromeOptions.addArguments("--no-first-run", "--no-default-browser-check", "--disable-extensions",
+                "--disable-gpu", "--disable-dev-shm-usage", "--window-size=1920,1080");
+        if ("root".equals(System.getProperty("user.name"))) { // Chrome refuses to start its sandbox as root, e.g. in CI containers
+            chromeOptions.addArguments("--no-sandbox");
+        }
+    }
+
+    /**
+     * Firefox preferences that skip first-run pages, default browser checks, telemetry and update checks on startup.
+     */
+    private static void addFastStartupPreferences(FirefoxOptions firefoxOptions) {
+        firefoxOptions.addPreference("browser.shell.checkDefaultBrowser", false);
+        firefoxOptions.addPreference("browser.startup.page", 0);
+        firefoxOptions.addPreference("browser.startup.homepage_override.mstone", "ignore");
+        firefoxOptions.addPreference("startup.homepage_welcome_url", "about:blank");
+        firefoxOptions.addPreference("datareporting.policy.dataSubmissionEnabled", false);
+        firefoxOptions.addPreference("toolkit.telemetry.reportingpolicy.firstRun", false);
+        firefoxOptions.addPreference("extensions.update.enabled", false);
+        firefoxOptions.addPreference("app.update.auto", false);
+        firefoxOptions.addPreference("layers.acceleration.disabled", true);
+    }
+
     /**
      * Creates a Webdriver instance with the specified browser.
-     * @param browser - can be FIREFOX, CHROME, INTERNET_EXPLORER
+     * @param browser - can be FIREFOX, FIREFOX_HEADLESS, CHROME, CHROME_HEADLESS, HTML_UNIT, INTERNET_EXPLORER
      * @return initialised instance of WebDriver
      */
     private WebDriver initLocal(BrowserType browser) {
-        getLogger().info("Initialise a new local WebDriver instance");
+        getLogger().info("Initialise a new local " + browser + " WebDriver instance");
 
         // Local drivers
-        System.setProperty("webdriver.chrome.driver", new File("src/main/resources/drivers/chromedriver.exe").getAbsolutePath());
-        System.setProperty("webdriver.ie.driver", new File("src/main/resources/drivers/IEDriverServer.exe").getAbsolutePath());
-        String geckoPath = "src/main/resources/drivers/geckodriver";
-        String OS = System.getProperty("os.name").toLowerCase();
-        if (OS.indexOf("win") >= 0){ // for windows use the exe
-            geckoPath = geckoPath + ".exe";
-        }
-        System.setProperty("webdriver.gecko.driver", new File(geckoPath).getAbsolutePath());
+        setDriverBinary("webdriver.chrome.driver", "chromedriver");
+        setDriverBinary("webdriver.ie.driver", "IEDriverServer");
+        setDriverBinary("webdriver.gecko.driver", "geckodriver");
         String browserBinaryLocation = System.getProperty("Webdriver.Browser.Binary", "");
 
 
-        DateTime initRequestTime = new DateTime();
+        long initRequestTime = System.nanoTime();
         if(driver == null) {
             switch(browser) {
+                case FIREFOX_HEADLESS:
                 case FIREFOX:
-                    FirefoxProfile ffp = new FirefoxProfile();
-                    ffp.setPreference("reader.parse-on-load.enabled", false);
+                    Map<String, Object> profilePreferences = new LinkedHashMap<>();
+                    profilePreferences.put("reader.parse-on-load.enabled", false);
                     FirefoxOptions firefoxOptions = new FirefoxOptions();
                     if(browserBinaryLocation != null && !browserBinaryLocation.isEmpty()){
                         firefoxOptions.setBinary(browserBinaryLocation);
                     }
-                    String allowPlugins = SessionProperties.getInstance().getProperty("AllowPlugins");
-                    if(allowPlugins.equals("TRUE")) {
-                        //start with Firebug enabled
-                        try {
-                            ffp.addExtension(new File("plugins/firebug-2.0.15-fx.xpi"));
-                            ffp.addExtension(new File("plugins/netExport-0.9b7.xpi"));
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-
-                        String networkCapture = SessionProperties.getInstance().getProperty("NetworkTrafficCapture");
-                        if(networkCapture.equals("TRUE")) {
-                            //netExport preferences
-                            ffp.setPreference("extensions.firebug.netexport.alwaysEnableAutoExport", true);
-                            ffp.setPreference("extensions.firebug.netexport.autoExportToFile", true);
-                            ffp.setPreference("extensions.firebug.netexport.Automation", true);
-                            ffp.setPreference("extensions.firebug.netexport.showPreview", false);
-                            ffp.setPreference("extensions.firebug.net.defaultPersist", true);
-                            ffp.setPreference("extensions.firebug.console.defaultPersist", true);
-                            //ffp.setPreference("extensions.firebug.netexport.secretToken", "hard24get");
-                            ffp.setPreference("extensions.firebug.netexport.defaultLogDir", System.getProperty("user.dir") + File.separator + "target"+File.separator +"NetworkTraffic");
-                            getLogger().info(System.getProperty("user.dir") + File.separator + "target"+File.separator +"NetworkTraffic");
-                        }
-                    }
 
                     firefoxOptions.setCapability("marionette", true);
-                    firefoxOptions.setCapability(FirefoxDriver.PROFILE, ffp);
+                    if(Settings.getBoolean("FirefoxProfileTemplate", true)) {
+                        // launch from a copy of a profile built once per configuration, instead of uploading a new one
+                        long copyStart = System.nanoTime();
+                        profileCopy = FirefoxProfileTemplate.forConfig(profilePreferences).newSessionCopy(getLogger());
+                        metrics.record("profileCopy", null, System.nanoTime() - copyStart);
+                        firefoxOptions.addArguments("-profile", profileCopy.getAbsolutePath());
+                    }
+                    else {
+                        firefoxOptions.setCapability(FirefoxDriver.PROFILE, FirefoxProfileTemplate.toProfile(profilePreferences));
+                    }
                     firefoxOptions.setCapability(CapabilityType.LOGGING_PREFS, seleniumLogPreferences);
                     firefoxOptions.addPreference("devtools.jsonview.enabled", false); // due to KIT-17452
-                    if(SessionProperties.getInstance().getProperty("HeadLessGecko").equalsIgnoreCase("true")) {
+                    if(browser == BrowserType.FIREFOX_HEADLESS) {
+                        addFastStartupPreferences(firefoxOptions);
+                        firefoxOptions.addArguments("--headless", "--width=1920", "--height=1080");
+                    }
+                    else if(SessionProperties.getInstance().getProperty("HeadLessGecko").equalsIgnoreCase("true")) {
                         firefoxOptions.addArguments("--headless");
                         if(SCREEN_SIZE.equals(ScreenSize.FULLSIZE.toString()) || SCREEN_SIZE.startsWith("$")) {
                             firefoxOptions.addArguments("--window-size").addArguments("1920,1080");
@@ -209,9 +387,26 @@ public class Driver extends Thread implements WebDriver {
                     ChromeOptions chromeOptions = new ChromeOptions();
                     chromeOptions.addArguments("test-type");
                     chromeOptions.setCapability(CapabilityType.LOGGING_PREFS, seleniumLogPreferences);
+                    chromeOptions.setCapability("goog:loggingPrefs", seleniumLogPreferences); // name used by chromedriver 75+
 
                     driver =  new ChromeDriver(chromeOptions);
                     break;
+                case CHROME_HEADLESS:
+                    ChromeOptions headlessOptions = new ChromeOptions();
+                    if(browserBinaryLocation != null && !browserBinaryLocation.isEmpty()){
+                        headlessOptions.setBinary(browserBinaryLocation);
+                    }
+                    headlessOptions.setHeadless(true);
+                    addFastStartupArguments(headlessOptions);
+                    headlessOptions.setCapability(CapabilityType.LOGGING_PREFS, seleniumLogPreferences);
+                    headlessOptions.setCapability("goog:loggingPrefs", seleniumLogPreferences);
+
+                    driver =  new ChromeDriver(headlessOptions);
+                    break;
+                case HTML_UNIT:
+                    // in-process, no browser binary or driver server to start, javascript enabled
+                    driver =  new HtmlUnitDriver(BrowserVersion.BEST_SUPPORTED, true);
+                    break;
                 case INTERNET_EXPLORER: driver =  new InternetExplorerDriver();
                     break;
             }
@@ -232,7 +427,8 @@ public class Driver extends Thread implements WebDriver {
             }
         }
         retryTriggered = false;
-        getLogger().info("Local WebDriver instance initialised. Took " + new Duration(initRequestTime, new DateTime()).getStandardSeconds() + " seconds.\n");
+        metrics.record("initLocal", browser.name(), System.nanoTime() - initRequestTime);
+        getLogger().info("Local " + browser + " WebDriver instance initialised. Took " + (System.nanoTime() - initRequestTime) / 1000000 + " ms.\n");
         return driver;
     }
 
@@ -380,6 +576,16 @@ public class Driver extends Thread implements WebDriver {
 
     // ################## Navigation and driver find methods below #################################################
 
+    /**
+     * @return true for the headless browsers, their window size is set at launch (see addFastStartupArguments)
+     * and maximizing them would shrink it to the virtual screen
+     */
+    private boolean hasFixedWindowSize() {
+        return chosenBrowserType == BrowserType.CHROME_HEADLESS
+                || chosenBrowserType == BrowserType.FIREFOX_HEADLESS
+                || chosenBrowserType == BrowserType.HTML_UNIT;
+    }
+
     /**
      * Takes browser to a specified URL, auto resizes window to profile dimensions
      * @param aUrl - URL to be called up in the browser
@@ -409,7 +615,9 @@ public class Driver extends Thread implements WebDriver {
      */
     public void get(String aUrl, ScreenSize size) {
         getLogger().info("Open URL: " + aUrl);
-        if(!isMobile()) { // Don't alter screen size if this is an actual mobile device
+        invalidateElementCache();
+        // Don't alter screen size if this is an actual mobile device, or a headless browser launched with a fixed size
+        if(!hasFixedWindowSize() && !isMobile()) {
             try {
                 switch (size) {
                     case FULLSIZE:
@@ -425,24 +633,162 @@ public class Driver extends Thread implements WebDriver {
                 //maximize isn't implemented for some SauceLabs platforms. If it fails, can continue, not a massive issue};
             }
         }
-        driver.get(aUrl);
+        long start = System.nanoTime();
+        timed("get", null, () -> { driver.get(aUrl); return null; });
+        getLogger().info("Loaded " + aUrl + " in " + (System.nanoTime() - start) / 1000000 + " ms.");
     }
 
     public void close() {
         getLogger().info("Close browser window");
+        invalidateElementCache();
+        String handle = driver.getWindowHandle();
         driver.close();
+        windows.windowClosed(handle);
     }
 
     public WebElement findElement(By by) {
-        getLogger().info("Find element " + by.toString());
-        WebElement elt;
-        elt = driver.findElement(by);
-        return elt;
+        K1Logger.info(getLogger(), () -> "Find element " + by);
+        if (!elementCacheEnabled) {
+            return timed("findElement", locatorName(by), () -> driver.findElement(by));
+        }
+        String key = by.toString();
+        CachedWebElement cached = elementCache.get(key);
+        if (cached != null) {
+            elementCacheHits.incrementAndGet();
+            return cached;
+        }
+        elementCacheMisses.incrementAndGet();
+        cached = new CachedWebElement(this, by, timed("findElement", locatorName(by), () -> driver.findElement(by)));
+        elementCache.put(key, cached);
+        return cached;
+    }
+
+    /**
+     * Retry policy for interactions with elements that went stale, with per-locator stale counts.
+     */
+    public StaleElementRetry getStaleRetry() {
+        return staleRetry;
+    }
+
+    // ################## Command latency metrics ##################################################################
+
+    /**
+     * Latency histograms of every command this Driver has sent, a summary is written at quit().
+     */
+    public CommandMetrics getMetrics() {
+        return metrics;
+    }
+
+    private <T> T timed(String command, String locatorName, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        }
+        finally {
+            metrics.record(command, locatorName, System.nanoTime() - start);
+            drainNetworkCaptureIfDue();
+        }
+    }
+
+    /**
+     * Like timed, also records how many times the browser was polled before the wait was over.
+     * The action adds its polls to the counter it is given, which belongs to this wait only, so waits running
+     * on different threads at the same time don't mix up their counts.
+     */
+    private <T> T timedWait(String command, String locatorName, Function<AtomicInteger, T> action) {
+        long start = System.nanoTime();
+        AtomicInteger polls = new AtomicInteger();
+        try {
+            return action.apply(polls);
+        }
+        finally {
+            metrics.recordWait(command, locatorName, System.nanoTime() - start, polls.get());
+            drainNetworkCaptureIfDue();
+        }
+    }
+
+    /**
+     * Drains the browser's performance log on the thread that just used the session, see NetworkCapture.
+     */
+    private void drainNetworkCaptureIfDue() {
+        if (network != null) {
+            network.drainIfDue();
+        }
+    }
+
+    private <V> V pollUntil(AtomicInteger polls, long timeoutMillis, String description, Function<? super WebDriver, V> condition) {
+        AdaptiveWait wait = new AdaptiveWait(driver, Math.max(0, timeoutMillis)).withMessage(description);
+        try {
+            return wait.until(condition);
+        }
+        finally {
+            polls.addAndGet(wait.getPollCount());
+        }
+    }
+
+    static String locatorName(By by) {
+        if (by instanceof Using.ByLocator) {
+            return CommandMetrics.templateName(((Using.ByLocator) by).getLocator().name);
+        }
+        return null;
+    }
+
+    private void writeMetricsReport() {
+        File reportFile = new File("target" + File.separator + getLogName() + "_" + getID() + "_latency.txt");
+        try {
+            metrics.writeReport(reportFile);
+            getLogger().info("Command latency summary (also in " + reportFile.getPath() + "):\n" + metrics.report());
+        }
+        catch (IOException e) {
+            getLogger().info("IOError writing latency report: " + e.toString());
+        }
+    }
+
+    // ################## Element cache ############################################################################
+
+    /**
+     * Turns the element cache on or off (default comes from the ElementCache session property).
+     * When on, findElement returns the element found earlier for the same resolved locator until the next
+     * navigation, switchTo() or window change. Stale cached elements are found again transparently.
+     */
+    public void setElementCacheEnabled(boolean enabled) {
+        elementCacheEnabled = enabled;
+        invalidateElementCache();
+    }
+
+    public boolean isElementCacheEnabled() {
+        return elementCacheEnabled;
+    }
+
+    /**
+     * Forgets all cached elements, e.g. after the page changed in a way the Driver can't see.
+     */
+    public void invalidateElementCache() {
+        elementCache.clear();
+    }
+
+    public long getElementCacheHits() {
+        return elementCacheHits.get();
+    }
+
+    public long getElementCacheMisses() {
+        return elementCacheMisses.get();
+    }
+
+    /**
+     * @return the number of times a cached element was stale and had to be found again
+     */
+    public long getElementCacheRefreshes() {
+        return elementCacheRefreshes.get();
+    }
+
+    void recordElementCacheRefresh() {
+        elementCacheRefreshes.incrementAndGet();
     }
 
     public List<WebElement> findElements(By by) {
-        getLogger().info("Find all elements " + by.toString());
-        List<WebElement> lst = driver.findElements(by);
+        K1Logger.info(getLogger(), () -> "Find all elements " + by);
+        List<WebElement> lst = timed("findElements", locatorName(by), () -> driver.findElements(by));
         return lst;
     }
 
@@ -490,36 +836,98 @@ public class Driver extends Thread implements WebDriver {
     }
 
     public WebDriver.Navigation navigate() {
+        invalidateElementCache(); // any navigation call is assumed to change the page
         return driver.navigate();
     }
 
     public void quit() {
         String autoQuit = SessionProperties.getInstance().getProperty("AutoQuit");
-        if (!autoQuit.equals("FALSE")) {
+        endSession(!autoQuit.equals("FALSE"));
+    }
+
+    /**
+     * Winds the session down: stops the async() thread, writes the latency report, waits for pending screenshots,
+     * logs the stale retry and element cache counts and closes the network capture.
+     * @param quitBrowser true to quit the browser and delete its profile copy as well, whatever AutoQuit says
+     */
+    void endSession(boolean quitBrowser) {
+        if (async != null) {
+            async.stop(ASYNC_DRAIN_TIMEOUT_MILLIS);
+        }
+        invalidateElementCache();
+        writeMetricsReport();
+        if (!screenshots.awaitCompletion(SCREENSHOT_WRITE_TIMEOUT_MILLIS)) {
+            getLogger().info(screenshots.getPendingCount() + " screenshots still not written after " + SCREENSHOT_WRITE_TIMEOUT_MILLIS + " ms.");
+        }
+        if (!staleRetry.getStaleCounts().isEmpty()) {
+            getLogger().info("Stale element retries per locator: " + staleRetry.getStaleCounts());
+        }
+        if (elementCacheEnabled) {
+            getLogger().info("Element cache hits: " + getElementCacheHits() + ", misses: " + getElementCacheMisses()
+                    + ", stale refreshes: " + getElementCacheRefreshes());
+        }
+        if (network != null) {
+            network.close();
+        }
+        if (quitBrowser) {
             getLogger().info("Quit browser.");
-            driver.quit();
+            try {
+                driver.quit();
+            }
+            finally {
+                deleteProfileCopy();
+            }
         }
+        else if (profileCopy != null) {
+            getLogger().info("Browser left open, its profile copy " + profileCopy.getPath() + " is deleted at JVM exit.");
+        }
+        K1Logger.flush(getLogger());
+    }
+
+    /**
+     * Deletes the per-session copy of the Firefox profile template, once the browser using it has quit.
+     */
+    private void deleteProfileCopy() {
+        FirefoxProfileTemplate.deleteSessionCopy(profileCopy);
+        profileCopy = null;
     }
 
     public WebDriver.TargetLocator switchTo() {
         getLogger().info("SwitchTo");
-        return driver.switchTo();
+        invalidateElementCache();
+        WebDriver.TargetLocator targetLocator = driver.switchTo();
+        // the actual switch happens on the returned TargetLocator, so time each of its calls as switchTo.<method>
+        return (WebDriver.TargetLocator) Proxy.newProxyInstance(WebDriver.TargetLocator.class.getClassLoader(),
+                new Class<?>[]{WebDriver.TargetLocator.class}, (proxy, method, args) -> {
+                    long start = System.nanoTime();
+                    try {
+                        return method.invoke(targetLocator, args);
+                    }
+                    catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    finally {
+                        metrics.record("switchTo." + method.getName(), null, System.nanoTime() - start);
+                    }
+                });
     }
 
 
 
+    /**
+     * Captures a screenshot on the calling thread and hands it to the ScreenshotWriter, which writes it to
+     * target/fileName in the background. quit() waits for all screenshots to be written.
+     * @param fileName file name without extension
+     */
     public void takeScreenshot(String fileName) {
         getLogger().info("Take screenshot named: " + fileName);
         try {
-            File scrFile = ((TakesScreenshot)driver).getScreenshotAs(OutputType.FILE);
-            FileUtils.copyFile(scrFile, new File("target//" + fileName + ".png"));
+            byte[] png = timed("takeScreenshot", null, () -> ((TakesScreenshot)driver).getScreenshotAs(OutputType.BYTES));
+            screenshots.write(png, fileName);
         }
         catch (ClassCastException cce) {
             getLogger().info("CCError taking screenshot: "  + cce.toString());
         }
-        catch (IOException ioe) {
-            getLogger().info("IOError saving screenshot: "  + ioe.toString());
-        }
         catch (WebDriverException wde){
             getLogger().info("WDError saving screenshot: "  + wde.toString());
         }
@@ -531,8 +939,7 @@ public class Driver extends Thread implements WebDriver {
      * @param fileName - The desired identifying filename (e.g. name of test or descriptive keyword).
      */
     public void takeScreenshotWithCurrentDate(String fileName) {
-        DateTimeFormatter dateFormatter = DateTimeFormat.forPattern("yyyy-MM-dd_HH_mm_ss");
-        String dateString = new DateTime().toString(dateFormatter);
+        String dateString = new DateTime().toString(SCREENSHOT_DATE_FORMAT);
         takeScreenshot((fileName+dateString).trim());
     }
 
@@ -582,33 +989,31 @@ public class Driver extends Thread implements WebDriver {
      */
     public void switchToWindowWithString(String windowString, boolean isTitle,
                                          boolean partialString, boolean caseSensitive, int timeoutSeconds) {
-        StringBuffer encounteredWindows;
-        DateTime switchTimeout = new DateTime().plusSeconds(timeoutSeconds<0?PageObject.mediumTimeOut:timeoutSeconds);
-        do {
-            encounteredWindows = new StringBuffer();
-            for (String winHandle : driver.getWindowHandles()) {
-                driver.switchTo().window(winHandle);
-                String text =isTitle?driver.getTitle():driver.getCurrentUrl();
-                encounteredWindows.append(text).append("\n");
-                if(caseSensitive) {
-                    if (partialString && text.contains(windowString)
-                            || !partialString && text.equals(windowString)) {
-                        return;
-                    }
-                } else {
-                    if (partialString && text.toLowerCase().contains(windowString.toLowerCase())
-                            || !partialString && text.equalsIgnoreCase(windowString)) {
-                        return;
-                    }
-                }
+        long timeoutMillis = (timeoutSeconds<0?PageObject.mediumTimeOut:timeoutSeconds) * 1000L;
+        Predicate<String> matches = text -> {
+            if(caseSensitive) {
+                return partialString && text.contains(windowString)
+                        || !partialString && text.equals(windowString);
+            } else {
+                return partialString && text.toLowerCase().contains(windowString.toLowerCase())
+                        || !partialString && text.equalsIgnoreCase(windowString);
             }
-        } while (new DateTime().isBefore(switchTimeout));
-        // if haven't found the window to switch to
-        throw new TestError("Error: unable to switch to window with " + (isTitle?"title":"URL")
-                + (partialString?" containing ":" ") +"'" + windowString
-                + "'. Found only the following windows:\n" + encounteredWindows);
+        };
+        invalidateElementCache();
+        try {
+            timedWait("switchToWindow", null, polls -> windows.switchToMatching(isTitle, matches, timeoutMillis, polls));
+        }
+        catch (TimeoutException e) {
+            // if haven't found the window to switch to
+            throw new TestError("Error: unable to switch to window with " + (isTitle?"title":"URL")
+                    + (partialString?" containing ":" ") +"'" + windowString
+                    + "'. Found only the following windows:\n" + windows.describe(isTitle));
+        }
     }
 
+    /**
+     * Closes the window with the title (found through the window registry) and switches back to the current window.
+     */
     public void closeWindow(String windowTitle) {
         String currentWindowHandle = getWindowHandle();
         switchToWindowWithTitle(windowTitle);
@@ -632,11 +1037,11 @@ public class Driver extends Thread implements WebDriver {
     }
 
     public String toString(){
-        return "ID: " + getID() + "\n" + ((RemoteWebDriver)driver).getCapabilities();
+        return "ID: " + getID() + "\n" + (driver instanceof HasCapabilities ? ((HasCapabilities) driver).getCapabilities() : driver);
     }
 
     public String getBrowserDetails(){
-        Capabilities cap = ((RemoteWebDriver) driver).getCapabilities();
+        Capabilities cap = ((HasCapabilities) driver).getCapabilities();
         String browser_name = cap.getBrowserName();
         String browser_version = cap.getVersion();
         return "Browser:"+browser_name + " Version:" + browser_version;
@@ -647,6 +1052,7 @@ public class Driver extends Thread implements WebDriver {
      * @param newWebDriver Webdriver to update the current Driver object
      */
     public void setWebDriver(WebDriver newWebDriver){
+        invalidateElementCache();
         driver = newWebDriver;
     }
 
@@ -682,6 +1088,64 @@ public class Driver extends Thread implements WebDriver {
 
     }
 
+    /**
+     * Runs a script in the browser in a single round trip.
+     * @param script javascript to execute, arguments are available as arguments[0..n]
+     * @param args script arguments
+     * @return whatever the script returns (see JavascriptExecutor for the type mapping)
+     */
+    public Object executeScript(String script, Object... args) {
+        getLogger().info("Execute script (" + args.length + " arguments)");
+        return timed("executeScript", null, () -> ((JavascriptExecutor) driver).executeScript(script, args));
+    }
+
+
+    /**
+     * Waits for an element to reach a state, resolving in the browser as soon as the DOM changes (see DomWaits).
+     * @param seconds
+     * @param locator locator with any variables already substituted
+     * @param state state to wait for
+     * @return the element, or null when waiting for INVISIBLE
+     */
+    public WebElement waitFor(int seconds, Locator locator, DomWaits.State state) {
+        return waitForMillis(seconds * 1000L, locator, state);
+    }
+
+    /**
+     * Same as waitFor, with a budget in milliseconds for waits that should fail fast.
+     * @param millis
+     * @param locator locator with any variables already substituted
+     * @param state state to wait for
+     * @return the element, or null when waiting for INVISIBLE
+     */
+    public WebElement waitForMillis(long millis, Locator locator, DomWaits.State state) {
+        K1Logger.info(getLogger(), () -> "Wait "+ millis+" ms for the element located by "+locator.toString()+" to be "+state);
+        return timedWait("waitFor" + state, locator.name, polls -> domWaits.await(locator, state, millis, polls));
+    }
+
+    /**
+     * Polls a condition with adaptive backoff (see AdaptiveWait) until it returns something other than null or false.
+     * The time to satisfy it and the number of polls are recorded under "waitUntil[description]".
+     * @param timeoutMillis
+     * @param description what is being waited for, used for metrics and the timeout message
+     * @param condition e.g. one of the ExpectedConditions
+     * @return the condition's result
+     */
+    public <V> V waitUntil(long timeoutMillis, String description, Function<? super WebDriver, V> condition) {
+        K1Logger.info(getLogger(), () -> "Wait "+ timeoutMillis+" ms for "+description);
+        return timedWait("waitUntil", description, polls -> pollUntil(polls, timeoutMillis, description, condition));
+    }
+
+    /**
+     * Waits for all the conditions together, with one overall deadline (see DomWaits.awaitAll).
+     * @param seconds
+     * @param conditions
+     * @return the conditions that were still unmet when time ran out, empty if all were met
+     */
+    public List<PageCondition> waitForAll(int seconds, List<PageCondition> conditions) {
+        K1Logger.info(getLogger(), () -> "Wait "+ seconds+" seconds for all of: "+conditions);
+        return timedWait("waitForAll", null, polls -> domWaits.awaitAll(conditions, seconds * 1000L, polls));
+    }
 
     /**
      * Wrapper of webdriver wait presenceOfElementLocated
@@ -691,12 +1155,8 @@ public class Driver extends Thread implements WebDriver {
      * @return the web element if found
      */
     public WebElement waitForPresence(int seconds, Locator locator, String... variable) {
-        String printableString="";
-        for (String var:variable) {
-            printableString =printableString.concat(var+" ");
-        }
-        getLogger().info("Wait "+ seconds+" seconds for the presence of element located by "+locator.toString()+ " with variable "+printableString);
-        return new WebDriverWait(driver,seconds).until(ExpectedConditions.presenceOfElementLocated(Using.locator(locator, variable)));
+        K1Logger.info(getLogger(), () -> "Wait "+ seconds+" seconds for the presence of element located by "+locator.toString()+ " with variable "+String.join(" ", variable));
+        return timedWait("waitForPresence", locator.name, polls -> domWaits.await(Using.processVariableLocator(locator, variable), DomWaits.State.PRESENT, seconds * 1000L, polls));
     }
 
     /**
@@ -706,8 +1166,8 @@ public class Driver extends Thread implements WebDriver {
      * @return the web element if found
      */
     public WebElement waitForPresence(int seconds, Locator locator) {
-        getLogger().info("Wait "+ seconds+" seconds for the presence of element located by "+locator.toString());
-        return new WebDriverWait(driver,seconds).until(ExpectedConditions.presenceOfElementLocated(Using.locator(locator)));
+        K1Logger.info(getLogger(), () -> "Wait "+ seconds+" seconds for the presence of element located by "+locator.toString());
+        return timedWait("waitForPresence", locator.name, polls -> domWaits.await(locator, DomWaits.State.PRESENT, seconds * 1000L, polls));
     }
 
     /**
@@ -718,8 +1178,13 @@ public class Driver extends Thread implements WebDriver {
      * @return the web element if found
      */
     public WebElement waitForClickable(int seconds, Locator locator) {
-        getLogger().info("Wait "+ seconds+" seconds for the element located by "+locator.toString()+" to be clickable");
-        return new WebDriverWait(driver,seconds).until(ExpectedConditions.elementToBeClickable(Using.locator(locator)));
+        K1Logger.info(getLogger(), () -> "Wait "+ seconds+" seconds for the element located by "+locator.toString()+" to be clickable");
+        return timedWait("waitForClickable", locator.name, polls -> {
+            long deadline = System.currentTimeMillis() + seconds * 1000L;
+            WebElement element = domWaits.await(locator, DomWaits.State.VISIBLE, seconds * 1000L, polls);
+            // visible, so normally only the enabled check is left and the first poll satisfies it
+            return pollUntil(polls, deadline - System.currentTimeMillis(), locator + " to be clickable", ExpectedConditions.elementToBeClickable(element));
+        });
     }
 
     /**
@@ -731,12 +1196,8 @@ public class Driver extends Thread implements WebDriver {
      * @return
      */
     public WebElement waitForClickable(int seconds, Locator locator, String... variable) {
-        String printableString="";
-        for (String var:variable) {
-            printableString =printableString.concat(var+" ");
-        }
-        getLogger().info("Wait "+ seconds+" seconds for the element located by "+locator.toString()+ " with variable "+printableString+" to be clickable");
-        return new WebDriverWait(driver,seconds).until(ExpectedConditions.visibilityOfElementLocated(Using.locator(locator, variable)));
+        K1Logger.info(getLogger(), () -> "Wait "+ seconds+" seconds for the element located by "+locator.toString()+ " with variable "+String.join(" ", variable)+" to be clickable");
+        return timedWait("waitForClickable", locator.name, polls -> domWaits.await(Using.processVariableLocator(locator, variable), DomWaits.State.VISIBLE, seconds * 1000L, polls));
     }
 
     /**
@@ -746,17 +1207,13 @@ public class Driver extends Thread implements WebDriver {
      * @return the web element if found
      */
     public WebElement waitForVisibility(int seconds, Locator locator) {
-        getLogger().info("Wait "+ seconds+" seconds for the element located by "+locator.toString() +" to be visible");
-        return new WebDriverWait(driver,seconds).until(ExpectedConditions.visibilityOfElementLocated(Using.locator(locator)));
+        K1Logger.info(getLogger(), () -> "Wait "+ seconds+" seconds for the element located by "+locator.toString() +" to be visible");
+        return timedWait("waitForVisibility", locator.name, polls -> domWaits.await(locator, DomWaits.State.VISIBLE, seconds * 1000L, polls));
     }
 
     public WebElement waitForVisibility(int seconds, Locator locator, String... variable) {
-        String printableString="";
-        for (String var:variable) {
-            printableString =printableString.concat(var+" ");
-        }
-        getLogger().info("Wait "+ seconds+" seconds for the element located by "+locator.toString()+ " with variable "+printableString+" to be visible");
-        return new WebDriverWait(driver,seconds).until(ExpectedConditions.visibilityOfElementLocated(Using.locator(locator, variable)));
+        K1Logger.info(getLogger(), () -> "Wait "+ seconds+" seconds for the element located by "+locator.toString()+ " with variable "+String.join(" ", variable)+" to be visible");
+        return timedWait("waitForVisibility", locator.name, polls -> domWaits.await(Using.processVariableLocator(locator, variable), DomWaits.State.VISIBLE, seconds * 1000L, polls));
     }
 
     /**
@@ -765,13 +1222,13 @@ public class Driver extends Thread implements WebDriver {
      * @param locator
      */
     public void waitForInvisibility(int seconds, Locator locator) {
-        getLogger().info("Wait "+ seconds+" seconds for the element located by "+locator.toString() +" to be invisible");
-        new WebDriverWait(driver,seconds).until(ExpectedConditions.invisibilityOfElementLocated(Using.locator(locator)));
+        K1Logger.info(getLogger(), () -> "Wait "+ seconds+" seconds for the element located by "+locator.toString() +" to be invisible");
+        timedWait("waitForInvisibility", locator.name, polls -> domWaits.await(locator, DomWaits.State.INVISIBLE, seconds * 1000L, polls));
     }
 
     public void waitForInvisibility(int seconds, Locator locator, String variable) {
-        getLogger().info("Wait "+ seconds+" seconds for the element located by "+locator.toString()+ " with variable "+variable+" to be visible");
-        new WebDriverWait(driver,seconds).until(ExpectedConditions.invisibilityOfElementLocated(Using.locator(locator, variable)));
+        K1Logger.info(getLogger(), () -> "Wait "+ seconds+" seconds for the element located by "+locator.toString()+ " with variable "+variable+" to be visible");
+        timedWait("waitForInvisibility", locator.name, polls -> domWaits.await(Using.processVariableLocator(locator, variable), DomWaits.State.INVISIBLE, seconds * 1000L, polls));
     }
 
     /**
@@ -781,7 +1238,7 @@ public class Driver extends Thread implements WebDriver {
      * @return all the web elements found
      */
     public List<WebElement> waitForAllVisibility(int seconds, Locator locator) {
-        getLogger().info("Wait "+ seconds+" seconds for elements located by "+locator.toString() +" to be visible");
-        return new WebDriverWait(driver,seconds).until(ExpectedConditions.visibilityOfAllElementsLocatedBy(Using.locator(locator)));
+        K1Logger.info(getLogger(), () -> "Wait "+ seconds+" seconds for elements located by "+locator.toString() +" to be visible");
+        return timedWait("waitForAllVisibility", locator.name, polls -> pollUntil(polls, seconds * 1000L, "all of " + locator + " to be visible", ExpectedConditions.visibilityOfAllElementsLocatedBy(Using.locator(locator))));
     }
 }
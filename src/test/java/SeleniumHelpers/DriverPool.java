@@ -0,0 +1,237 @@
+package SeleniumHelpers;
+
+
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pool of warm browser sessions, so that tests don't pay the full browser launch every time they need a Driver.
+ * Sessions are launched in the background, leased to one thread at a time, health-checked and cleared of
+ * cookies and storage when returned, and recycled after a configurable number of uses.
+ *
+ * Settings (read through Settings):
+ * DriverPoolSize    - number of sessions to pre-launch (default ParallelParameterized.getParallelism())
+ * DriverPoolMaxUses - number of leases after which a session is quit and replaced (default 20)
+ * DriverPoolLeaseTimeoutSeconds - how long lease() waits for a session being launched (default 120)
+ */
+public class DriverPool {
+    private static final String POOL_LOGGER_NAME = "DriverPool";
+    private static final long ASYNC_COMMANDS_TIMEOUT_MILLIS = 30000;
+    private static DriverPool instance;
+
+    private final Logger logger = new K1Logger().setUpLogger(POOL_LOGGER_NAME);
+    private final LinkedBlockingQueue<Driver> idleDrivers = new LinkedBlockingQueue<>();
+    private final Map<String, Integer> useCounts = new ConcurrentHashMap<>();
+    private final ThreadLocal<Driver> leasedDriver = new ThreadLocal<>();
+    private final AtomicInteger pendingLaunches = new AtomicInteger();
+    private final AtomicInteger waitingLeases = new AtomicInteger();
+    private final ExecutorService launcher;
+    private final Supplier<Driver> driverFactory;
+    private final int maxUses;
+    private final long leaseTimeoutMillis;
+    private volatile boolean shutDown = false;
+
+    public static synchronized DriverPool getInstance() {
+        if (instance == null) {
+            instance = new DriverPool("testLogger",
+                    Settings.getInt("DriverPoolSize", ParallelParameterized.getParallelism()),
+                    Settings.getInt("DriverPoolMaxUses", 20),
+                    Settings.getInt("DriverPoolLeaseTimeoutSeconds", 120) * 1000L);
+        }
+        return instance;
+    }
+
+    /**
+     * Creates the pool and immediately starts launching the warm sessions in the background.
+     * @param loggerName logger name handed to every Driver the pool creates
+     * @param size number of sessions to pre-launch
+     * @param maxUses number of leases after which a session is recycled
+     * @param leaseTimeoutMillis how long lease() waits for a session being launched before launching its own
+     */
+    public DriverPool(String loggerName, int size, int maxUses, long leaseTimeoutMillis) {
+        this(() -> new Driver(loggerName), size, maxUses, leaseTimeoutMillis);
+    }
+
+    /**
+     * @param driverFactory launches one session, e.g. a Driver wrapping an in-process browser
+     */
+    DriverPool(Supplier<Driver> driverFactory, int size, int maxUses, long leaseTimeoutMillis) {
+        if (size < 1 || maxUses < 1)
+            throw new TestError("Driver pool size and max uses must be at least 1.");
+        this.driverFactory = driverFactory;
+        this.maxUses = maxUses;
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+        launcher = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "DriverPool-launcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Pre-launch " + size + " browser sessions, recycle after " + maxUses + " uses.");
+        for (int i = 0; i < size; i++) {
+            launchInBackground();
+        }
+    }
+
+    /**
+     * Leases a session to the current thread. The same thread gets the same session back until it is released.
+     * Waits for a warm session if one is being launched that no other thread is waiting for,
+     * otherwise launches a new one on the calling thread.
+     * @return a Driver exclusively owned by the calling thread
+     */
+    public Driver lease() {
+        if (shutDown)
+            throw new TestError("Cannot lease a driver from a pool that has been shut down.");
+        Driver driver = leasedDriver.get();
+        if (driver != null) {
+            return driver;
+        }
+        driver = idleDrivers.poll();
+        if (driver == null) {
+            driver = awaitPendingLaunch();
+        }
+        if (driver == null) {
+            logger.info("No warm session available, launching one on " + Thread.currentThread().getName());
+            driver = launch();
+        }
+        leasedDriver.set(driver);
+        logger.info("Leased driver " + driver.getID() + " to " + Thread.currentThread().getName());
+        return driver;
+    }
+
+    /**
+     * Returns the session leased by the current thread to the pool.
+     * Its cookies and storage are cleared first, so the next lease doesn't start out logged in as this user.
+     * Commands the test queued through Driver.async() are waited for first, as they still use the session.
+     * Sessions that fail the health check, have reached the max uses or still run async commands after
+     * 30 seconds are quit and replaced in the background.
+     * @param driver the driver previously obtained from lease()
+     */
+    public void release(Driver driver) {
+        if (driver == null)
+            return;
+        if (driver != leasedDriver.get())
+            throw new TestError("Driver " + driver.getID() + " is not leased by " + Thread.currentThread().getName());
+        leasedDriver.remove();
+        K1Logger.flush(driver.getLogger()); // write out this test's log before the driver logs for the next one
+        int uses = useCounts.merge(driver.getID(), 1, Integer::sum);
+        if (shutDown) {
+            retire(driver, "pool is shut down");
+        }
+        else if (!driver.awaitAsyncCommands(ASYNC_COMMANDS_TIMEOUT_MILLIS)) {
+            retire(driver, "async commands still queued or running after " + ASYNC_COMMANDS_TIMEOUT_MILLIS + " ms");
+            launchInBackground();
+        }
+        else if (uses >= maxUses) {
+            retire(driver, "reached " + uses + " uses");
+            launchInBackground();
+        }
+        else if (!driver.isHealthy()) {
+            retire(driver, "failed health check");
+            launchInBackground();
+        }
+        else if (!driver.resetSession()) {
+            retire(driver, "failed to clear cookies and storage");
+            launchInBackground();
+        }
+        else {
+            logger.info("Driver " + driver.getID() + " returned to the pool after " + uses + " uses.");
+            idleDrivers.offer(driver);
+        }
+    }
+
+    /**
+     * Quits every idle session and stops launching new ones. Leased sessions are quit when they are released.
+     */
+    public void shutdown() {
+        shutDown = true;
+        launcher.shutdownNow();
+        Driver driver;
+        while ((driver = idleDrivers.poll()) != null) {
+            retire(driver, "pool is shut down");
+        }
+        synchronized (DriverPool.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+    }
+
+    public int getIdleCount() {
+        return idleDrivers.size();
+    }
+
+    /**
+     * Waits for a background launch, but only while there are at least as many pending launches as waiting threads.
+     * When a launch fails, or another thread took the session, the caller stops waiting and launches its own.
+     * @return the launched session, or null if the caller should launch one
+     */
+    private Driver awaitPendingLaunch() {
+        long deadline = System.currentTimeMillis() + leaseTimeoutMillis;
+        waitingLeases.incrementAndGet();
+        try {
+            while (waitingLeases.get() <= pendingLaunches.get() && System.currentTimeMillis() < deadline) {
+                Driver driver = idleDrivers.poll(100, TimeUnit.MILLISECONDS);
+                if (driver != null) {
+                    return driver;
+                }
+            }
+            return idleDrivers.poll();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TestError("Interrupted while waiting for a pooled driver.");
+        }
+        finally {
+            waitingLeases.decrementAndGet();
+        }
+    }
+
+    private void launchInBackground() {
+        pendingLaunches.incrementAndGet();
+        launcher.submit(() -> {
+            try {
+                Driver driver = launch();
+                if (shutDown) {
+                    retire(driver, "pool is shut down");
+                }
+                else {
+                    idleDrivers.offer(driver);
+                }
+            }
+            catch (Exception e) {
+                logger.info("Failed to pre-launch a browser session: " + e.toString());
+            }
+            finally {
+                pendingLaunches.decrementAndGet();
+            }
+        });
+    }
+
+    private Driver launch() {
+        long start = System.currentTimeMillis();
+        Driver driver = driverFactory.get();
+        useCounts.put(driver.getID(), 0);
+        logger.info("Launched driver " + driver.getID() + " in " + (System.currentTimeMillis() - start) + " ms.");
+        return driver;
+    }
+
+    private void retire(Driver driver, String reason) {
+        logger.info("Retire driver " + driver.getID() + ": " + reason);
+        useCounts.remove(driver.getID());
+        try {
+            driver.endSession(true); // bypass AutoQuit, a retired session is never handed out again
+        }
+        catch (Exception e) {
+            logger.info("Error quitting retired driver " + driver.getID() + ": " + e.toString());
+        }
+    }
+
+}
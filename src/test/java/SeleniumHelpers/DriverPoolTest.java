@@ -0,0 +1,166 @@
+package SeleniumHelpers;
+
+
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Lease and wait logic of DriverPool. The pooled Drivers wrap a stub browser that answers every call,
+ * so no browser is launched.
+ */
+public class DriverPoolTest {
+    private final AtomicInteger launches = new AtomicInteger();
+    private final CountDownLatch backgroundLaunchesMayFinish = new CountDownLatch(1);
+    private final ExecutorService otherThread = Executors.newSingleThreadExecutor();
+    private DriverPool pool;
+
+    @After
+    public void tearDown() {
+        backgroundLaunchesMayFinish.countDown();
+        otherThread.shutdownNow();
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void threadKeepsItsDriverUntilItReleasesIt() throws Exception {
+        pool = new DriverPool(this::launch, 1, 20, 30000);
+        Driver driver = pool.lease();
+        assertSame(driver, pool.lease());
+        pool.release(driver);
+        assertEquals(1, pool.getIdleCount());
+        assertSame(driver, otherThread.submit(pool::lease).get(10, TimeUnit.SECONDS));
+        assertEquals(1, launches.get());
+    }
+
+    @Test
+    public void leaseWaitsForTheLaunchInProgress() throws Exception {
+        pool = new DriverPool(this::launchHeldInBackground, 1, 20, 30000);
+        Future<Driver> lease = otherThread.submit(pool::lease);
+        Thread.sleep(300);
+        assertFalse("lease returned before the warm session was launched", lease.isDone());
+        backgroundLaunchesMayFinish.countDown();
+        lease.get(10, TimeUnit.SECONDS);
+        assertEquals(1, launches.get());
+    }
+
+    @Test
+    public void leaseLaunchesItsOwnAfterTheLeaseTimeout() {
+        pool = new DriverPool(this::launchHeldInBackground, 1, 20, 200);
+        long start = System.currentTimeMillis();
+        pool.lease();
+        assertTrue("lease didn't wait for the launch in progress", System.currentTimeMillis() - start >= 200);
+        assertEquals(1, launches.get()); // its own, the background launch is still held
+    }
+
+    @Test
+    public void driverIsReplacedAfterMaxUses() {
+        pool = new DriverPool(this::launch, 1, 1, 30000);
+        Driver first = pool.lease();
+        pool.release(first);
+        Driver second = pool.lease();
+        assertNotSame(first, second);
+        assertEquals(2, launches.get());
+    }
+
+    @Test
+    public void releaseWaitsForAsyncCommands() {
+        pool = new DriverPool(this::launch, 1, 20, 30000);
+        Driver driver = pool.lease();
+        AtomicBoolean commandRan = new AtomicBoolean();
+        driver.async().run(d -> {
+            sleep(200);
+            commandRan.set(true);
+        });
+        pool.release(driver);
+        assertTrue("driver released while its async command was running", commandRan.get());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void onlyTheLeasingThreadCanRelease() throws Exception {
+        pool = new DriverPool(this::launch, 1, 20, 30000);
+        Driver driver = pool.lease();
+        try {
+            otherThread.submit(() -> pool.release(driver)).get(10, TimeUnit.SECONDS);
+            fail("driver released by a thread that didn't lease it");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TestError);
+        }
+    }
+
+    private Driver launch() {
+        launches.incrementAndGet();
+        return new Driver("DriverPoolTest", stubBrowser());
+    }
+
+    /**
+     * Launches on the pool's launcher threads only finish once backgroundLaunchesMayFinish is counted down.
+     */
+    private Driver launchHeldInBackground() {
+        if (Thread.currentThread().getName().equals("DriverPool-launcher")) {
+            try {
+                backgroundLaunchesMayFinish.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TestError("Interrupted while holding a background launch.");
+            }
+        }
+        return launch();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return a browser that is always healthy: manage() returns itself and every other call does nothing
+     */
+    private static WebDriver stubBrowser() {
+        return (WebDriver) Proxy.newProxyInstance(DriverPoolTest.class.getClassLoader(),
+                new Class<?>[]{WebDriver.class, WebDriver.Options.class, JavascriptExecutor.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "manage":
+                            return proxy;
+                        case "getWindowHandle":
+                            return "stub-window";
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "stub browser";
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,169 @@
+package SeleniumHelpers;
+
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.openqa.selenium.firefox.FirefoxProfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Firefox profile built once per distinct configuration (preferences) and kept on disk in
+ * target/profile-cache/<config hash>. Each session launches from a plain directory copy of it, instead of having
+ * the driver build, zip and upload a new profile every time.
+ * Copies not deleted when their session quits (e.g. with AutoQuit=FALSE) are deleted at JVM shutdown.
+ */
+public class FirefoxProfileTemplate {
+    private static final File CACHE_DIR = new File("target" + File.separator + "profile-cache");
+    private static final Map<String, FirefoxProfileTemplate> templates = new ConcurrentHashMap<>();
+    private static final Set<File> sessionCopies = ConcurrentHashMap.newKeySet();
+    private static final AtomicBoolean shutdownCleanupRegistered = new AtomicBoolean();
+
+    private final Map<String, Object> preferences;
+    private final String hash;
+    private volatile File directory;
+
+    private FirefoxProfileTemplate(Map<String, Object> preferences, String hash) {
+        this.preferences = preferences;
+        this.hash = hash;
+    }
+
+    /**
+     * @param preferences profile preferences
+     * @return the template for this configuration, shared by all sessions that use the same configuration
+     */
+    public static FirefoxProfileTemplate forConfig(Map<String, Object> preferences) {
+        Map<String, Object> sortedPreferences = Collections.unmodifiableMap(new TreeMap<>(preferences));
+        String hash = hash(sortedPreferences);
+        return templates.computeIfAbsent(hash, key -> new FirefoxProfileTemplate(sortedPreferences, key));
+    }
+
+    /**
+     * Builds the configuration as a regular FirefoxProfile, for when the template isn't used.
+     */
+    public static FirefoxProfile toProfile(Map<String, Object> preferences) {
+        FirefoxProfile profile = new FirefoxProfile();
+        for (Map.Entry<String, Object> preference : preferences.entrySet()) {
+            profile.setPreference(preference.getKey(), preference.getValue());
+        }
+        return profile;
+    }
+
+    /**
+     * Deletes a copy made by newSessionCopy, once the browser using it has quit.
+     */
+    public static void deleteSessionCopy(File copy) {
+        if (copy != null && sessionCopies.remove(copy)) {
+            FileUtils.deleteQuietly(copy);
+        }
+    }
+
+    /**
+     * Copies the template (building it first if this is the first session with this configuration) into a new
+     * directory for one browser session. Delete the copy with deleteSessionCopy when the session ends.
+     * @param logger logger of the Driver the copy is for
+     * @return the profile directory to launch Firefox with (-profile <dir>)
+     */
+    public File newSessionCopy(Logger logger) {
+        File template = getDirectory(logger);
+        long start = System.nanoTime();
+        try {
+            File copy = Files.createTempDirectory("ff-profile-" + hash.substring(0, 8) + "-").toFile();
+            registerShutdownCleanup();
+            sessionCopies.add(copy);
+            FileUtils.copyDirectory(template, copy);
+            logger.info("Copied Firefox profile template " + hash.substring(0, 8) + " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+            return copy;
+        }
+        catch (IOException e) {
+            throw new TestError("Unable to copy Firefox profile template: " + e.toString());
+        }
+    }
+
+    private static void registerShutdownCleanup() {
+        if (shutdownCleanupRegistered.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (File copy : sessionCopies) {
+                    FileUtils.deleteQuietly(copy);
+                }
+            }, "profile-copy-cleanup"));
+        }
+    }
+
+    private File getDirectory(Logger logger) {
+        if (directory == null) {
+            synchronized (this) {
+                if (directory == null) {
+                    directory = build(logger);
+                }
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Lays the profile out on disk once. A template left by an earlier run with the same configuration is re-used.
+     * The template is built in a temporary directory and moved into place, so a half built one is never used.
+     */
+    private File build(Logger logger) {
+        File target = new File(CACHE_DIR, hash);
+        if (target.isDirectory()) {
+            logger.info("Re-using Firefox profile template " + target.getPath());
+            return target;
+        }
+        long start = System.nanoTime();
+        File laidOut = toProfile(preferences).layoutOnDisk();
+        try {
+            CACHE_DIR.mkdirs();
+            File staging = Files.createTempDirectory(CACHE_DIR.toPath(), hash + ".tmp").toFile();
+            FileUtils.copyDirectory(laidOut, staging);
+            try {
+                Files.move(staging.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e) { // another run got there first
+                FileUtils.deleteQuietly(staging);
+                if (!target.isDirectory())
+                    throw e;
+            }
+        }
+        catch (IOException e) {
+            throw new TestError("Unable to build Firefox profile template: " + e.toString());
+        }
+        finally {
+            FileUtils.deleteQuietly(laidOut);
+        }
+        logger.info("Built Firefox profile template " + target.getPath() + " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+        return target;
+    }
+
+    private static String hash(Map<String, Object> preferences) {
+        StringBuilder config = new StringBuilder();
+        for (Map.Entry<String, Object> preference : preferences.entrySet()) {
+            Object value = preference.getValue();
+            config.append(preference.getKey()).append('=').append(value.getClass().getSimpleName()).append(':').append(value).append('\n');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(config.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new TestError("SHA-256 not available: " + e.toString());
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package SeleniumHelpers;
+
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process HTTP server on an ephemeral localhost port that serves stand-ins for the login and landing pages,
+ * with the same element ids and classes the LoginPage and LandingPage locators use. Makes runs fast, offline and
+ * repeatable, and gives a baseline for measuring the framework's own overhead.
+ *
+ * Pages: / (login form, posts to /login) and /landing (needs the session cookie a successful login sets).
+ * Behaviour that can be configured per run: users that may log in, a server-side response delay, a delay before
+ * the page content is shown, and BLOCKUI/GRAYOUT overlays that cover the page for a while after it loads.
+ */
+public class FixtureServer {
+    private static final String SESSION_COOKIE = "fixture_session";
+    private static FixtureServer instance;
+
+    public enum Overlay {
+        BLOCKUI("blockUI blockOverlay"),
+        GRAYOUT("fancybox-overlay");
+
+        private final String cssClass;
+
+        Overlay(String cssClass) {
+            this.cssClass = cssClass;
+        }
+    }
+
+    private final Logger logger = new K1Logger().setUpLogger("FixtureServer");
+    private final Map<String, String> users = new ConcurrentHashMap<>();
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+    private final Map<Overlay, Long> overlays = new ConcurrentHashMap<>();
+    private volatile long responseDelayMillis = 0;
+    private volatile long contentDelayMillis = 0;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @return the shared server, started on first use
+     */
+    public static synchronized FixtureServer getInstance() {
+        if (instance == null) {
+            instance = new FixtureServer().start();
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the shared server if it was started.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    public synchronized FixtureServer start() {
+        if (server != null)
+            return this;
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        }
+        catch (IOException e) {
+            throw new TestError("Unable to start the fixture server: " + e.toString());
+        }
+        if (VirtualThreads.isEnabled()) { // many in-process sessions at once, don't start a platform thread per request
+            executor = VirtualThreads.newPerTaskExecutor("FixtureServer", 16, logger);
+        }
+        else {
+            executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "FixtureServer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        logger.info("Fixture server listening on " + getBaseUrl());
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+            logger.info("Fixture server stopped.");
+        }
+    }
+
+    /**
+     * @return e.g. http://127.0.0.1:41234/ , the login page
+     */
+    public String getBaseUrl() {
+        if (server == null)
+            throw new TestError("Fixture server is not running.");
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Lets the user log in, any other credentials are rejected with the login error message.
+     */
+    public FixtureServer addUser(String username, String password) {
+        users.put(username, password);
+        return this;
+    }
+
+    /**
+     * @param millis how long the server waits before answering each request
+     */
+    public FixtureServer setResponseDelay(long millis) {
+        responseDelayMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param millis how long after loading a page its content becomes visible
+     */
+    public FixtureServer setContentDelay(long millis) {
+        contentDelayMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param overlay overlay to show on every page
+     * @param millis how long after loading the page the overlay is removed, 0 for no overlay
+     */
+    public FixtureServer setOverlay(Overlay overlay, long millis) {
+        if (millis > 0) {
+            overlays.put(overlay, millis);
+        }
+        else {
+            overlays.remove(overlay);
+        }
+        return this;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (responseDelayMillis > 0) {
+                Thread.sleep(responseDelayMillis);
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/") && exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 200, loginPage(false));
+            }
+            else if (path.equals("/login") && exchange.getRequestMethod().equals("POST")) {
+                handleLogin(exchange);
+            }
+            else if (path.equals("/landing")) {
+                if (sessions.contains(sessionCookie(exchange))) {
+                    respond(exchange, 200, landingPage());
+                }
+                else {
+                    redirect(exchange, "/", null);
+                }
+            }
+            else {
+                respond(exchange, 404, page("Not found", "<p>Not found</p>"));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void handleLogin(HttpExchange exchange) throws IOException {
+        Map<String, String> form = parseForm(readBody(exchange.getRequestBody()));
+        String username = form.get("username");
+        String password = users.get(username);
+        if (password != null && password.equals(form.get("password"))) {
+            String session = UUID.randomUUID().toString();
+            sessions.add(session);
+            redirect(exchange, "/landing", SESSION_COOKIE + "=" + session + "; Path=/");
+        }
+        else {
+            respond(exchange, 200, loginPage(true));
+        }
+    }
+
+    private String loginPage(boolean showError) {
+        return page("Login",
+                "<div id=\"error\"" + (showError ? "" : " style=\"display:none\"") + ">Invalid username or password</div>" +
+                "<form method=\"post\" action=\"/login\">" +
+                "<input id=\"textfield_username\" name=\"username\" type=\"text\">" +
+                "<input id=\"textfield_password\" name=\"password\" type=\"password\">" +
+                "<button id=\"btn_login\" type=\"submit\">Login</button>" +
+                "</form>");
+    }
+
+    private String landingPage() {
+        StringBuilder content = new StringBuilder("<form>");
+        for (int i = 1; i <= 3; i++) {
+            content.append("<input id=\"radbtn_").append(i).append("\" name=\"choice\" type=\"radio\" value=\"").append(i).append("\">")
+                    .append("<button id=\"text_radbtn").append(i).append("\" type=\"button\">Option ").append(i).append("</button>");
+        }
+        content.append("<button id=\"btn_submit\" type=\"button\">Submit</button></form>");
+        return page("Landing", content.toString());
+    }
+
+    private String page(String title, String content) {
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>")
+                .append(title).append("</title></head><body>");
+        long contentDelay = contentDelayMillis;
+        html.append("<div id=\"content\"").append(contentDelay > 0 ? " style=\"display:none\"" : "").append(">")
+                .append(content).append("</div>");
+        StringBuilder script = new StringBuilder();
+        if (contentDelay > 0) {
+            script.append("setTimeout(function() { document.getElementById('content').style.display = ''; }, ")
+                    .append(contentDelay).append(");");
+        }
+        for (Map.Entry<Overlay, Long> overlay : overlays.entrySet()) {
+            String id = "overlay_" + overlay.getKey().name().toLowerCase();
+            html.append("<div id=\"").append(id).append("\" class=\"").append(overlay.getKey().cssClass)
+                    .append("\" style=\"position:fixed;top:0;left:0;width:100%;height:100%;background:rgba(0,0,0,0.3)\"></div>");
+            script.append("setTimeout(function() { var o = document.getElementById('").append(id)
+                    .append("'); o.parentNode.removeChild(o); }, ").append(overlay.getValue()).append(");");
+        }
+        if (script.length() > 0) {
+            html.append("<script>").append(script).append("</script>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String html) throws IOException {
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void redirect(HttpExchange exchange, String location, String cookie) throws IOException {
+        exchange.getResponseHeaders().set("Location", location);
+        if (cookie != null) {
+            exchange.getResponseHeaders().add("Set-Cookie", cookie);
+        }
+        exchange.sendResponseHeaders(302, -1);
+    }
+
+    private static String sessionCookie(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Cookie");
+        if (header == null)
+            return null;
+        for (String cookie : header.split(";")) {
+            String[] pair = cookie.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].equals(SESSION_COOKIE))
+                return pair[1];
+        }
+        return null;
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseForm(String body) throws UnsupportedEncodingException {
+        Map<String, String> form = new HashMap<>();
+        for (String field : body.split("&")) {
+            String[] pair = field.split("=", 2);
+            if (pair.length == 2) {
+                form.put(URLDecoder.decode(pair[0], "UTF-8"), URLDecoder.decode(pair[1], "UTF-8"));
+            }
+        }
+        return form;
+    }
+}
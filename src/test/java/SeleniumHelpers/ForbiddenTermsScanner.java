@@ -0,0 +1,153 @@
+package SeleniumHelpers;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks pages for terms (a regex, alternatives separated by |) that must not appear in them.
+ * The terms are unescaped and compiled once per distinct setting and shared by all threads, and pages whose content
+ * hash was already found clean are not scanned again.
+ * With ForbiddenTermsInBrowser=TRUE the scan runs in the browser, so only the hash and any match cross the wire
+ * instead of the whole page source. Terms that aren't valid javascript regex are scanned in Java instead.
+ */
+public class ForbiddenTermsScanner {
+    private static final int KNOWN_CLEAN_PAGES = 256;
+    private static final int SNIPPET_CONTEXT = 75;
+    private static final Map<String, ForbiddenTermsScanner> scanners = new ConcurrentHashMap<>();
+    private static final boolean inBrowser = Settings.getBoolean("ForbiddenTermsInBrowser", false);
+    private static volatile String configuredTerms;
+
+    private final String terms;
+    private final Pattern pattern;
+    private final Set<Long> cleanPages = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > KNOWN_CLEAN_PAGES;
+        }
+    });
+    private volatile boolean browserScanSupported = true;
+
+    private ForbiddenTermsScanner(String terms) {
+        this.terms = terms;
+        this.pattern = Pattern.compile(terms);
+    }
+
+    /**
+     * @return scanner for the ForbiddenTerms setting, or null if it isn't set (see Settings)
+     */
+    public static ForbiddenTermsScanner fromSessionProperties() {
+        if (configuredTerms == null) {
+            configuredTerms = Settings.getString("ForbiddenTerms", "");
+        }
+        return forTerms(configuredTerms);
+    }
+
+    /**
+     * @param rawTerms regex as written in the properties file, i.e. possibly with XML entities like &amp;lt;
+     * @return scanner for the terms, or null if there are none
+     */
+    public static ForbiddenTermsScanner forTerms(String rawTerms) {
+        if (rawTerms == null || rawTerms.isEmpty())
+            return null;
+        return scanners.computeIfAbsent(rawTerms, raw -> new ForbiddenTermsScanner(unescape(raw)));
+    }
+
+    public String getTerms() {
+        return terms;
+    }
+
+    /**
+     * Scans the page the driver is currently on.
+     * @throws TestError with a snippet around the first match if a forbidden term is found
+     */
+    public void scan(Driver driver) {
+        if (inBrowser && browserScanSupported && scanInBrowser(driver))
+            return;
+        scanSource(driver.getPageSource());
+    }
+
+    /**
+     * Scans the given page source.
+     * @throws TestError with a snippet around the first match if a forbidden term is found
+     */
+    public void scanSource(String pageSource) {
+        long hash = hash(pageSource);
+        if (isKnownClean(hash))
+            return;
+        Matcher matcher = pattern.matcher(pageSource);
+        if (matcher.find()) {
+            int snippetStart = Math.max(0, matcher.start() - SNIPPET_CONTEXT);
+            int snippetEnd = Math.min(matcher.end() + SNIPPET_CONTEXT, pageSource.length());
+            throw forbiddenTermFound(pageSource.substring(snippetStart, snippetEnd));
+        }
+        markClean(hash);
+    }
+
+    /**
+     * @return false if the browser couldn't do the scan and it has to be done in Java
+     */
+    private boolean scanInBrowser(Driver driver) {
+        List<Long> knownHashes;
+        synchronized (cleanPages) {
+            knownHashes = new ArrayList<>(cleanPages);
+        }
+        Object result = driver.executeScript(BrowserScripts.SCAN_FORBIDDEN_TERMS, pattern.pattern(), knownHashes);
+        if (!(result instanceof List)) {
+            K1Logger.info(driver.getLogger(), () -> "Forbidden terms are not a valid javascript regex, scan page source instead: " + terms);
+            browserScanSupported = false;
+            return false;
+        }
+        List<?> scan = (List<?>) result;
+        if (scan.get(1) != null)
+            throw forbiddenTermFound((String) scan.get(2));
+        markClean(((Number) scan.get(0)).longValue());
+        return true;
+    }
+
+    private TestError forbiddenTermFound(String snippet) {
+        return new TestError("Forbidden term '" + terms + "' found in page source. Snippet:\n" + snippet);
+    }
+
+    private boolean isKnownClean(long hash) {
+        synchronized (cleanPages) {
+            return cleanPages.contains(hash);
+        }
+    }
+
+    private void markClean(long hash) {
+        synchronized (cleanPages) {
+            cleanPages.add(hash);
+        }
+    }
+
+    /**
+     * 53 bit key of the page: 32 bit FNV-1a over the UTF-16 code units, with the low 21 bits of String.hashCode
+     * above it. A javascript number holds 53 bits exactly, BrowserScripts.SCAN_FORBIDDEN_TERMS computes the same key.
+     */
+    static long hash(String source) {
+        int fnv = 0x811c9dc5;
+        for (int i = 0; i < source.length(); i++) {
+            fnv ^= source.charAt(i);
+            fnv *= 0x01000193;
+        }
+        return (source.hashCode() & 0x1fffffL) << 32 | fnv & 0xffffffffL;
+    }
+
+    private static String unescape(String terms) {
+        if (terms.indexOf('&') < 0)
+            return terms;
+        return terms.replace("&quot;", "\"")
+                .replace("&apos;", "'")
+                .replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&amp;", "&");
+    }
+}
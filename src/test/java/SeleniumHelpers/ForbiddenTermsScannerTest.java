@@ -0,0 +1,79 @@
+package SeleniumHelpers;
+
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import org.junit.Test;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that ForbiddenTermsScanner.hash and the hash BrowserScripts.SCAN_FORBIDDEN_TERMS computes in the browser
+ * give the same page key. The script runs in an in-process HtmlUnit browser.
+ */
+public class ForbiddenTermsScannerTest {
+    private static final String[] PAGES = {
+            "",
+            "a",
+            "<html><head><title>Login</title></head><body><form id=\"login\"></form></body></html>",
+            "h\u00e9llo w\u00f6rld \u2713",
+            "surrogate pair \uD83D\uDE00 and a lone \uD800 surrogate",
+            "costarring",
+            "liquid",
+            longPage()
+    };
+
+    @Test
+    public void javaAndBrowserHashesAgree() {
+        HtmlUnitDriver browser = new HtmlUnitDriver(BrowserVersion.BEST_SUPPORTED, true);
+        try {
+            browser.get("about:blank");
+            for (String page : PAGES) {
+                browser.executeScript("document.body.textContent = arguments[0];", page);
+                String outerHtml = (String) browser.executeScript("return document.documentElement.outerHTML;");
+                List<?> scan = (List<?>) browser.executeScript(BrowserScripts.SCAN_FORBIDDEN_TERMS, "(?!)", Collections.emptyList());
+                assertEquals("key of page of length " + outerHtml.length(),
+                        ForbiddenTermsScanner.hash(outerHtml), ((Number) scan.get(0)).longValue());
+            }
+        }
+        finally {
+            browser.quit();
+        }
+    }
+
+    @Test
+    public void unsetTermsGiveNoScanner() {
+        // an unset ForbiddenTerms setting reads as its "${ForbiddenTerms}" placeholder, which isn't a valid regex
+        assertNull(ForbiddenTermsScanner.forTerms(Settings.valueOf("${ForbiddenTerms}")));
+        assertNull(ForbiddenTermsScanner.forTerms(Settings.valueOf(null)));
+        assertNull(ForbiddenTermsScanner.forTerms(""));
+    }
+
+    @Test
+    public void hashFitsInAJavascriptNumber() {
+        for (String page : PAGES) {
+            long key = ForbiddenTermsScanner.hash(page);
+            assertEquals(0, key >>> 53);
+        }
+    }
+
+    @Test
+    public void pagesWithTheSameFnvHashGetDifferentKeys() {
+        // "costarring" and "liquid" collide in 32 bit FNV-1a
+        assertEquals(ForbiddenTermsScanner.hash("costarring") & 0xffffffffL, ForbiddenTermsScanner.hash("liquid") & 0xffffffffL);
+        assertNotEquals(ForbiddenTermsScanner.hash("costarring"), ForbiddenTermsScanner.hash("liquid"));
+    }
+
+    private static String longPage() {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            page.append("<div class=\"row\">").append(i).append("</div>");
+        }
+        return page.toString();
+    }
+}
@@ -0,0 +1,90 @@
+package SeleniumHelpers;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void everyValueFallsInsideItsBucket() {
+        for (long micros : sampleValues()) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(micros + " above its bucket's upper bound", micros <= LatencyHistogram.upperBoundOf(bucket));
+            if (bucket > 0) {
+                assertTrue(micros + " not above the previous bucket", micros > LatencyHistogram.upperBoundOf(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void upperBoundRoundTrips() {
+        int lastBucket = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+        for (int bucket = 0; bucket <= lastBucket; bucket++) {
+            assertEquals(bucket, LatencyHistogram.bucketOf(LatencyHistogram.upperBoundOf(bucket)));
+            if (bucket > 0) {
+                assertEquals(bucket, LatencyHistogram.bucketOf(LatencyHistogram.upperBoundOf(bucket - 1) + 1));
+            }
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(lastBucket));
+    }
+
+    @Test
+    public void bucketsAreWithinOneEighth() {
+        for (long micros : sampleValues()) {
+            long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(micros));
+            assertTrue(micros + " rounds up to " + upperBound, upperBound - micros <= micros / 8);
+        }
+    }
+
+    @Test
+    public void percentilesAreBoundedByTheBucketAndTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMicros(50));
+        for (long millis = 1; millis <= 1000; millis++) {
+            histogram.recordNanos(millis * 1000000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMaxMicros());
+        for (int percentile : new int[] {0, 1, 50, 90, 99}) {
+            long exact = Math.max(1, percentile * 10) * 1000L; // the 0th percentile is the smallest value
+            long reported = histogram.getPercentileMicros(percentile);
+            assertTrue(percentile + "th percentile " + reported + " below " + exact, reported >= exact);
+            assertTrue(percentile + "th percentile " + reported + " too far above " + exact, reported <= exact + exact / 8);
+        }
+        assertEquals(1000000, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void negativeAndSubMicrosecondDurationsCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(-5000);
+        histogram.recordNanos(999);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getTotalMicros());
+        assertEquals(0, histogram.getPercentileMicros(100));
+    }
+
+    private static long[] sampleValues() {
+        long[] values = new long[64 * 6 + 1000];
+        int i = 0;
+        for (long micros = 0; micros < 1000; micros++) {
+            values[i++] = micros;
+        }
+        for (int bit = 0; bit < 63; bit++) {
+            long power = 1L << bit;
+            values[i++] = power;
+            values[i++] = power - 1;
+            values[i++] = power + 1;
+            values[i++] = power + power / 2;
+            values[i++] = power + power / 8 - 1;
+            values[i++] = power + power / 8;
+        }
+        values[i++] = Long.MAX_VALUE;
+        long[] used = new long[i];
+        System.arraycopy(values, 0, used, 0, i);
+        return used;
+    }
+}
@@ -5,12 +5,29 @@ public class Locator {
 
     public String name;
     public String locatorText;
+    private CompiledLocator compiled; // parsed form of locatorText, see compiled()
 
     public Locator(String name, String locatorText) {
         this.name = name;
         this.locatorText = locatorText;
     }
 
+    /**
+     * Returns the parsed strategy and placeholder slots of this locator, parsing only when locatorText has changed.
+     */
+    CompiledLocator compiled() {
+        CompiledLocator current = compiled;
+        if (current == null || current.source != locatorText) { // reference check on purpose, it's only a cache
+            current = CompiledLocator.compile(locatorText);
+            compiled = current;
+        }
+        return current;
+    }
+
+    void setCompiled(CompiledLocator compiledLocator) {
+        compiled = compiledLocator;
+    }
+
     public String toString() {
         return name + ": " + locatorText;
     }
@@ -0,0 +1,96 @@
+package SeleniumHelpers;
+
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log channel of one Driver: formats its messages on the logging thread and buffers them in memory, without
+ * touching a file or any lock shared with other Drivers. The lines carry a global sequence number, so
+ * K1Logger.mergeChannels can write the channels of a logger into its log file in the order they were logged.
+ * A full buffer asks K1Logger's background merger to merge the log file, so memory stays bounded without the
+ * logging thread waiting for the file.
+ */
+public class LogChannel extends AppenderSkeleton {
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private final String loggerName;
+    private final String channelId;
+    private final ConcurrentLinkedQueue<Line> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final int bufferSize;
+
+    static class Line {
+        final long sequence;
+        final String text;
+
+        private Line(long sequence, String text) {
+            this.sequence = sequence;
+            this.text = text;
+        }
+    }
+
+    /**
+     * @param loggerName name of the log file the channel is merged into
+     * @param channelId id shown on every line, e.g. Driver.getID()
+     * @param bufferSize lines buffered before the log file is merged
+     */
+    public LogChannel(String loggerName, String channelId, int bufferSize) {
+        this.loggerName = loggerName;
+        this.channelId = channelId;
+        this.bufferSize = bufferSize;
+        setName("channel-" + loggerName + "-" + channelId);
+        setLayout(new PatternLayout("%d{HH:mm:ss.SSS} [" + channelId + "] %C{1}.%-25M: %m%n"));
+    }
+
+    @Override
+    protected void append(LoggingEvent event) {
+        StringBuilder text = new StringBuilder(layout.format(event));
+        String[] throwable = event.getThrowableStrRep();
+        if (throwable != null) {
+            for (String line : throwable) {
+                text.append(line).append(System.lineSeparator());
+            }
+        }
+        buffer.add(new Line(sequence.incrementAndGet(), text.toString()));
+        if (buffered.incrementAndGet() >= bufferSize) {
+            K1Logger.requestMerge(loggerName);
+        }
+    }
+
+    /**
+     * Removes and returns the lines buffered so far, oldest first.
+     */
+    List<Line> drain() {
+        List<Line> lines = new ArrayList<>();
+        Line line;
+        while ((line = buffer.poll()) != null) {
+            lines.add(line);
+            buffered.decrementAndGet();
+        }
+        return lines;
+    }
+
+    public String getLoggerName() {
+        return loggerName;
+    }
+
+    public String getChannelId() {
+        return channelId;
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public boolean requiresLayout() {
+        return true;
+    }
+}
@@ -1,32 +1,217 @@
 package SeleniumHelpers;
 
 
+import org.apache.log4j.Appender;
 import org.apache.log4j.FileAppender;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 public class K1Logger {
+    private static final String FQCN = K1Logger.class.getName(); // so that %C and %M report our caller, not K1Logger
+    private static final Map<String, Map<String, LogChannel>> channels = new ConcurrentHashMap<>();
+    private static final Set<String> mergedFiles = ConcurrentHashMap.newKeySet();
+    private static final Set<String> pendingMerges = ConcurrentHashMap.newKeySet();
+    private static final AtomicBoolean shutdownMergeRegistered = new AtomicBoolean();
+    private static ExecutorService merger;
 
+    /**
+     * Settings (read through Settings):
+     * LogLevel           - log4j level name (default ALL)
+     * AsyncLogging       - TRUE to write log files on a background thread (default synchronous)
+     * AsyncLogBufferSize - max number of messages waiting to be written (default 8192)
+     * AsyncLogOverflow   - BLOCK or DROP when the buffer is full (default BLOCK)
+     * AsyncLogLocation   - TRUE to keep class and method on asynchronously written lines, which costs a stack walk
+     *                      on the logging thread per message (default FALSE, the lines show the thread instead)
+     * LogChannels        - TRUE to give each Driver its own channel, see setUpChannel (default FALSE)
+     * LogChannelBufferSize - lines a channel buffers before its log file is merged (default 10000)
+     */
     public Logger setUpLogger(String fileName) {
         Logger logger = Logger.getLogger(fileName);
         Enumeration app = logger.getAllAppenders();
         if(app.hasMoreElements()){
             return logger; // keep using same logger already created. I think this solves the case where tests are Parameterized
         }
+        boolean async = Settings.getBoolean("AsyncLogging", false);
+        boolean locationInfo = !async || Settings.getBoolean("AsyncLogLocation", false);
+        String pattern = locationInfo ? "%d{HH:mm:ss.SSS} %C{1}.%-25M: %m%n" : "%d{HH:mm:ss.SSS} [%t]: %m%n";
         FileAppender apndr=null;
         try {
-            apndr = new FileAppender(new PatternLayout("%d{HH:mm:ss.SSS} %C{1}.%-25M: %m%n"),"target"+ File.separator+fileName+".log",false);
+            apndr = new FileAppender(new PatternLayout(pattern),"target"+ File.separator+fileName+".log",false);
+            apndr.setName(fileName);
         } catch (IOException e) {
             e.printStackTrace();
         }
-        logger.addAppender(apndr);
-        logger.setLevel((Level) Level.ALL);
+        if(apndr != null && async) {
+            logger.addAppender(new AsyncFileAppender(apndr,
+                    Settings.getInt("AsyncLogBufferSize", 8192),
+                    Settings.getEnum("AsyncLogOverflow", AsyncFileAppender.OverflowPolicy.class, AsyncFileAppender.OverflowPolicy.BLOCK),
+                    locationInfo));
+        }
+        else {
+            logger.addAppender(apndr);
+        }
+        logger.setLevel(Level.toLevel(Settings.getString("LogLevel", "ALL"), Level.ALL));
         return logger;
     }
+
+    /**
+     * Sets up the log channel of one Driver. Its messages are buffered per channel and written to
+     * target/fileName.log by mergeChannels, ordered across all the channels of that file, so concurrent Drivers
+     * logging to the same file neither interleave mid-run nor contend on one appender.
+     * A channel is merged when its Driver is released to the pool or quits, when its buffer holds
+     * LogChannelBufferSize lines (on a background merger thread), and at JVM shutdown.
+     * The channel is the logger's only appender, its lines don't reach the root logger's appenders (e.g. console).
+     * Used instead of setUpLogger when LogChannels=TRUE.
+     * @param fileName name of the log file the channel is merged into
+     * @param channelId id of the channel, e.g. Driver.getID()
+     */
+    public Logger setUpChannel(String fileName, String channelId) {
+        Logger logger = Logger.getLogger(fileName + "." + channelId);
+        if(logger.getAllAppenders().hasMoreElements()){
+            return logger;
+        }
+        registerShutdownMerge();
+        LogChannel channel = new LogChannel(fileName, channelId, Settings.getInt("LogChannelBufferSize", 10000));
+        channels.computeIfAbsent(fileName, key -> new ConcurrentHashMap<>()).put(channelId, channel);
+        logger.setAdditivity(false); // keep it out of a file appender set up for fileName itself and out of root's
+        logger.addAppender(channel);
+        logger.setLevel(Level.toLevel(Settings.getString("LogLevel", "ALL"), Level.ALL));
+        return logger;
+    }
+
+    /**
+     * Merges whatever is still buffered if the run ends without the Drivers being released or quit, e.g. when killed.
+     */
+    private static void registerShutdownMerge() {
+        if(shutdownMergeRegistered.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(K1Logger::mergeChannels, "log-channel-merge"));
+        }
+    }
+
+    /**
+     * Merges this log file on the background merger, unless a merge of it is already waiting there.
+     * Called by a channel whose buffer is full, so the logging thread never writes the file itself.
+     */
+    static void requestMerge(String fileName) {
+        if(pendingMerges.add(fileName)) {
+            merger().execute(() -> {
+                pendingMerges.remove(fileName); // lines logged while this merge runs request the next one
+                mergeChannels(fileName);
+            });
+        }
+    }
+
+    private static synchronized ExecutorService merger() {
+        if(merger == null) {
+            merger = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "log-channel-merger");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return merger;
+    }
+
+    /**
+     * @return true if Drivers should log through setUpChannel
+     */
+    public static boolean isChannelLogging() {
+        return Settings.getBoolean("LogChannels", false);
+    }
+
+    /**
+     * Writes what the channels of this log file have buffered so far into target/fileName.log, in the order it was
+     * logged. The first merge in a run replaces the file, later merges append to it.
+     */
+    public static void mergeChannels(String fileName) {
+        Map<String, LogChannel> fileChannels = channels.get(fileName);
+        if(fileChannels == null) {
+            return;
+        }
+        synchronized (fileChannels) {
+            List<LogChannel.Line> lines = new ArrayList<>();
+            for(LogChannel channel : fileChannels.values()) {
+                lines.addAll(channel.drain());
+            }
+            if(lines.isEmpty()) {
+                return;
+            }
+            lines.sort(Comparator.comparingLong(line -> line.sequence));
+            File file = new File("target" + File.separator + fileName + ".log");
+            file.getParentFile().mkdirs();
+            try (Writer writer = new BufferedWriter(new FileWriter(file, !mergedFiles.add(fileName)))) {
+                for(LogChannel.Line line : lines) {
+                    writer.write(line.text);
+                }
+            }
+            catch (IOException e) {
+                Logger.getLogger(K1Logger.class).error("Couldn't merge " + lines.size() + " log channel lines into " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Merges the channels of every log file, call this when the tests are done.
+     */
+    public static void mergeChannels() {
+        for(String fileName : channels.keySet()) {
+            mergeChannels(fileName);
+        }
+    }
+
+    /**
+     * Logs at info level, only building the message if info is enabled for this logger.
+     * Use for messages that are expensive to build or logged in tight loops, e.g. info(logger, () -> "Find " + by)
+     */
+    public static void info(Logger logger, Supplier<String> message) {
+        if(logger.isInfoEnabled()) {
+            logger.log(FQCN, Level.INFO, message.get(), null);
+        }
+    }
+
+    /**
+     * Logs at debug level, only building the message if debug is enabled for this logger.
+     */
+    public static void debug(Logger logger, Supplier<String> message) {
+        if(logger.isDebugEnabled()) {
+            logger.log(FQCN, Level.DEBUG, message.get(), null);
+        }
+    }
+
+    /**
+     * Waits for any asynchronously written messages of this logger to reach the log file,
+     * or merges its channel into the log file if it logs through one.
+     */
+    public static void flush(Logger logger) {
+        Enumeration appenders = logger.getAllAppenders();
+        while(appenders.hasMoreElements()) {
+            Appender appender = (Appender) appenders.nextElement();
+            if(appender instanceof AsyncFileAppender) {
+                ((AsyncFileAppender) appender).flush();
+            }
+            else if(appender instanceof LogChannel) {
+                mergeChannels(((LogChannel) appender).getLoggerName());
+            }
+        }
+    }
+
 }
 
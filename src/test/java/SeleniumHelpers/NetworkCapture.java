@@ -0,0 +1,414 @@
+package SeleniumHelpers;
+
+
+import org.joda.time.DateTime;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.logging.LogEntry;
+import org.openqa.selenium.logging.LogType;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Network capture from the browser's performance log (Chrome's Network.* devtools events), enabled with
+ * NetworkTrafficCapture=TRUE. The log is drained incrementally after a driver command once NetworkCaptureDrainMillis
+ * (default 2000) have passed, when a page object finishes loading and at quit, always on the thread that uses the
+ * session, and finished requests are streamed into target/<logger>_<driver id>.har by a background thread.
+ * A new HAR page starts with every document request of the main frame, however the navigation happened (get(),
+ * form submit, link, redirect), and a summary of each page is logged when it ends: request count, bytes transferred
+ * and the slowest requests.
+ */
+public class NetworkCapture {
+    private static final int SLOWEST_SHOWN = 5;
+
+    private static final long DRAIN_INTERVAL_MILLIS = Math.max(100, Settings.getLong("NetworkCaptureDrainMillis", 2000));
+
+    private final Driver driver;
+    private final Map<String, Request> inFlight = new HashMap<>();
+    private final List<JSONObject> pages = new ArrayList<>();
+    private final JSONParser parser = new JSONParser();
+    private final List<Request> pageRequests = new ArrayList<>();
+    private final Consumer<JSONObject> entrySink;
+    private ExecutorService writerThread;
+    private Writer writer;
+    private boolean firstEntry = true;
+    private Boolean hasPerformanceLog; // null until the first drain asks the browser
+    private boolean closed = false;
+    private volatile long nextDrainMillis = System.currentTimeMillis() + DRAIN_INTERVAL_MILLIS;
+    private String mainFrameId;
+    private String currentPage;
+
+    private static class Request {
+        private String url;
+        private String method;
+        private double startTimestamp;
+        private double wallTime;
+        private long status;
+        private String statusText = "";
+        private String mimeType = "";
+        private long bytes;
+        private double endTimestamp;
+        private boolean failed;
+
+        private double getMillis() {
+            return (endTimestamp - startTimestamp) * 1000;
+        }
+    }
+
+    public NetworkCapture(Driver driver) {
+        this.driver = driver;
+        this.entrySink = entry -> writer().submit(() -> writeEntry(entry));
+    }
+
+    /**
+     * @param entrySink receives each finished request as a HAR entry, instead of the HAR file
+     */
+    NetworkCapture(Driver driver, Consumer<JSONObject> entrySink) {
+        this.driver = driver;
+        this.entrySink = entrySink;
+    }
+
+    /**
+     * Drains the log if NetworkCaptureDrainMillis have passed since the last drain. Driver calls this after its
+     * commands, on the thread that ran the command, as a WebDriver session can't be used from two threads at once.
+     */
+    public void drainIfDue() {
+        if (System.currentTimeMillis() < nextDrainMillis)
+            return;
+        synchronized (this) {
+            try {
+                drain();
+            }
+            catch (RuntimeException e) { // e.g. the browser quit in the meantime, the next command tries again
+                driver.getLogger().info("Unable to drain the performance log: " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * Drains the log and names the current HAR page after the page object that finished loading.
+     * @param pageName e.g. LandingPage
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void pageLoaded(String pageName) {
+        drain();
+        if (!pages.isEmpty()) {
+            pages.get(pages.size() - 1).put("title", pageName + " " + currentPage);
+        }
+    }
+
+    /**
+     * @return the HAR pages started so far
+     */
+    synchronized List<JSONObject> getPages() {
+        return new ArrayList<>(pages);
+    }
+
+    /**
+     * Drains what is left, finishes the HAR file and waits for it to be written.
+     */
+    public synchronized void close() {
+        drain();
+        closed = true;
+        logSummary();
+        if (writerThread != null) {
+            List<JSONObject> pageList = new ArrayList<>(pages);
+            writerThread.submit(() -> writeFooter(pageList));
+            writerThread.shutdown();
+            try {
+                if (!writerThread.awaitTermination(30, TimeUnit.SECONDS)) {
+                    driver.getLogger().info("HAR file still not written after 30 seconds.");
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writerThread = null;
+        }
+    }
+
+    /**
+     * Pulls the performance log entries gathered since the last drain and streams the finished requests out.
+     * Capture is switched off only if the browser has no performance log, other errors are left to the next drain.
+     */
+    private void drain() {
+        nextDrainMillis = System.currentTimeMillis() + DRAIN_INTERVAL_MILLIS;
+        if (closed || !hasPerformanceLog())
+            return;
+        List<LogEntry> entries;
+        try {
+            entries = driver.getWebDriver().manage().logs().get(LogType.PERFORMANCE).getAll();
+        }
+        catch (UnsupportedCommandException e) {
+            switchOff(e.getMessage());
+            return;
+        }
+        for (LogEntry entry : entries) {
+            handle(entry.getMessage());
+        }
+    }
+
+    private boolean hasPerformanceLog() {
+        if (hasPerformanceLog == null) {
+            Set<String> logTypes;
+            try {
+                logTypes = driver.getWebDriver().manage().logs().getAvailableLogTypes();
+            }
+            catch (UnsupportedCommandException | UnsupportedOperationException e) {
+                switchOff(e.getMessage());
+                return false;
+            }
+            hasPerformanceLog = logTypes.contains(LogType.PERFORMANCE);
+            if (!hasPerformanceLog) {
+                switchOff("the available log types are " + logTypes);
+            }
+        }
+        return hasPerformanceLog;
+    }
+
+    private void switchOff(String reason) {
+        hasPerformanceLog = false;
+        driver.getLogger().info("Browser has no performance log, network capture is off: " + reason);
+    }
+
+    /**
+     * Ends the current page (logging its summary) and starts attributing requests to a new one.
+     */
+    @SuppressWarnings("unchecked")
+    private void startPage(String url, double wallTime) {
+        logSummary();
+        currentPage = url;
+        JSONObject page = new JSONObject();
+        page.put("id", "page_" + (pages.size() + 1));
+        page.put("title", url);
+        page.put("startedDateTime", new DateTime((long) (wallTime * 1000)).toString());
+        page.put("pageTimings", new JSONObject());
+        pages.add(page);
+    }
+
+    private void finished(Request request) {
+        String pageRef = pages.isEmpty() ? null : (String) pages.get(pages.size() - 1).get("id");
+        entrySink.accept(toHarEntry(request, pageRef));
+        pageRequests.add(request);
+    }
+
+    /**
+     * Tracks the request the event is about, page boundaries and finished requests are handled as they come.
+     * @param message a performance log entry's message, {"message":{"method":..., "params":...}, ...}
+     */
+    void handle(String message) {
+        JSONObject event;
+        try {
+            event = (JSONObject) ((JSONObject) parser.parse(message)).get("message");
+        }
+        catch (ParseException | ClassCastException e) {
+            return;
+        }
+        if (event == null)
+            return;
+        String method = (String) event.get("method");
+        JSONObject params = (JSONObject) event.get("params");
+        if (method == null || params == null || !method.startsWith("Network."))
+            return;
+        String requestId = (String) params.get("requestId");
+        switch (method) {
+            case "Network.requestWillBeSent": {
+                JSONObject redirectResponse = (JSONObject) params.get("redirectResponse");
+                Request previousHop = inFlight.remove(requestId);
+                if (redirectResponse != null && previousHop != null) { // a redirect re-uses the request id, the previous hop is done
+                    respond(previousHop, redirectResponse);
+                    previousHop.endTimestamp = number(params.get("timestamp"));
+                    previousHop.bytes = (long) number(redirectResponse.get("encodedDataLength"));
+                    finished(previousHop);
+                }
+                JSONObject requestParams = (JSONObject) params.get("request");
+                Request request = new Request();
+                request.url = (String) requestParams.get("url");
+                request.method = (String) requestParams.get("method");
+                request.startTimestamp = number(params.get("timestamp"));
+                request.wallTime = number(params.get("wallTime"));
+                if ("Document".equals(params.get("type")) && redirectResponse == null && isMainFrame((String) params.get("frameId"))) {
+                    startPage(request.url, request.wallTime);
+                }
+                inFlight.put(requestId, request);
+                return;
+            }
+            case "Network.responseReceived": {
+                Request request = inFlight.get(requestId);
+                JSONObject response = (JSONObject) params.get("response");
+                if (request != null && response != null) {
+                    respond(request, response);
+                }
+                return;
+            }
+            case "Network.loadingFinished":
+            case "Network.loadingFailed": {
+                Request request = inFlight.remove(requestId);
+                if (request != null) {
+                    request.endTimestamp = number(params.get("timestamp"));
+                    request.bytes = (long) number(params.get("encodedDataLength"));
+                    request.failed = method.equals("Network.loadingFailed");
+                    finished(request);
+                }
+                return;
+            }
+            default:
+        }
+    }
+
+    /**
+     * The first document requested is the main frame's, later documents of other frames are iframes.
+     */
+    private boolean isMainFrame(String frameId) {
+        if (mainFrameId == null) {
+            mainFrameId = frameId;
+        }
+        return mainFrameId == null || mainFrameId.equals(frameId);
+    }
+
+    private static void respond(Request request, JSONObject response) {
+        request.status = (long) number(response.get("status"));
+        request.statusText = String.valueOf(response.get("statusText"));
+        request.mimeType = String.valueOf(response.get("mimeType"));
+    }
+
+    /**
+     * Logs the summary of the current page's requests, if it made any.
+     */
+    private void logSummary() {
+        if (pageRequests.isEmpty())
+            return;
+        List<Request> finished = new ArrayList<>(pageRequests);
+        pageRequests.clear();
+        long bytes = 0;
+        int failed = 0;
+        for (Request request : finished) {
+            bytes += request.bytes;
+            failed += request.failed ? 1 : 0;
+        }
+        finished.sort((a, b) -> Double.compare(b.getMillis(), a.getMillis()));
+        StringBuilder summary = new StringBuilder("Network summary for " + currentPage + ": " + finished.size()
+                + " requests, " + bytes / 1024 + " KB" + (failed > 0 ? ", " + failed + " failed" : "") + ". Slowest:");
+        for (Request request : finished.subList(0, Math.min(SLOWEST_SHOWN, finished.size()))) {
+            summary.append(String.format("%n  %7.1f ms %4d %s %s", request.getMillis(), request.status, request.method, request.url));
+        }
+        driver.getLogger().info(summary.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject toHarEntry(Request request, String pageRef) {
+        JSONObject harRequest = new JSONObject();
+        harRequest.put("method", request.method);
+        harRequest.put("url", request.url);
+        harRequest.put("httpVersion", "");
+        harRequest.put("headers", new JSONArray());
+        harRequest.put("queryString", new JSONArray());
+        harRequest.put("cookies", new JSONArray());
+        harRequest.put("headersSize", -1);
+        harRequest.put("bodySize", -1);
+
+        JSONObject content = new JSONObject();
+        content.put("size", request.bytes);
+        content.put("mimeType", request.mimeType);
+        JSONObject harResponse = new JSONObject();
+        harResponse.put("status", request.status);
+        harResponse.put("statusText", request.statusText);
+        harResponse.put("httpVersion", "");
+        harResponse.put("headers", new JSONArray());
+        harResponse.put("cookies", new JSONArray());
+        harResponse.put("content", content);
+        harResponse.put("redirectURL", "");
+        harResponse.put("headersSize", -1);
+        harResponse.put("bodySize", request.bytes);
+
+        JSONObject timings = new JSONObject();
+        timings.put("send", 0);
+        timings.put("wait", request.getMillis());
+        timings.put("receive", 0);
+
+        JSONObject entry = new JSONObject();
+        if (pageRef != null) {
+            entry.put("pageref", pageRef);
+        }
+        entry.put("startedDateTime", new DateTime((long) (request.wallTime * 1000)).toString());
+        entry.put("time", request.getMillis());
+        entry.put("request", harRequest);
+        entry.put("response", harResponse);
+        entry.put("cache", new JSONObject());
+        entry.put("timings", timings);
+        return entry;
+    }
+
+    private ExecutorService writer() {
+        if (writerThread == null) {
+            String name = "har-writer-" + driver.getID();
+            writerThread = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            File file = new File("target" + File.separator + driver.getLogName() + "_" + driver.getID() + ".har");
+            writerThread.submit(() -> writeHeader(file));
+        }
+        return writerThread;
+    }
+
+    private void writeHeader(File file) {
+        try {
+            file.getParentFile().mkdirs();
+            writer = new BufferedWriter(new FileWriter(file));
+            writer.write("{\"log\":{\"version\":\"1.2\",\"creator\":{\"name\":\"SeleniumHelpers.NetworkCapture\",\"version\":\"1.0\"},\"entries\":[\n");
+            driver.getLogger().info("Streaming network capture to " + file.getPath());
+        }
+        catch (IOException e) {
+            driver.getLogger().info("Unable to write HAR file: " + e.toString());
+            writer = null;
+        }
+    }
+
+    private void writeEntry(JSONObject entry) {
+        if (writer == null)
+            return;
+        try {
+            writer.write((firstEntry ? "" : ",\n") + entry.toJSONString());
+            firstEntry = false;
+        }
+        catch (IOException e) {
+            driver.getLogger().info("Unable to write HAR entry: " + e.toString());
+        }
+    }
+
+    private void writeFooter(List<JSONObject> pageList) {
+        if (writer == null)
+            return;
+        try {
+            writer.write("\n],\"pages\":" + JSONArray.toJSONString(pageList) + "}}\n");
+            writer.close();
+        }
+        catch (IOException e) {
+            driver.getLogger().info("Unable to finish HAR file: " + e.toString());
+        }
+        writer = null;
+    }
+
+    private static double number(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+}
@@ -0,0 +1,104 @@
+package SeleniumHelpers;
+
+
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Turning performance log events into HAR entries and pages, without a browser.
+ */
+public class NetworkCaptureTest {
+    private final List<JSONObject> entries = new ArrayList<>();
+    private final NetworkCapture capture = new NetworkCapture(new Driver("NetworkCaptureTest", null), entries::add);
+
+    @Test
+    public void finishedRequestBecomesAnEntry() {
+        capture.handle(event("Network.requestWillBeSent", "{'requestId':'1','frameId':'F1','type':'Document','timestamp':10.0,'wallTime':1600000000.0,"
+                + "'request':{'url':'http://localhost/login','method':'GET'}}"));
+        capture.handle(event("Network.responseReceived", "{'requestId':'1','response':{'status':200,'statusText':'OK','mimeType':'text/html'}}"));
+        assertTrue("entry written before the request finished", entries.isEmpty());
+        capture.handle(event("Network.loadingFinished", "{'requestId':'1','timestamp':10.25,'encodedDataLength':2048}"));
+
+        assertEquals(1, entries.size());
+        JSONObject entry = entries.get(0);
+        assertEquals("http://localhost/login", request(entry).get("url"));
+        assertEquals("GET", request(entry).get("method"));
+        assertEquals(200L, response(entry).get("status"));
+        assertEquals("text/html", ((JSONObject) response(entry).get("content")).get("mimeType"));
+        assertEquals(2048L, response(entry).get("bodySize"));
+        assertEquals(250.0, (Double) entry.get("time"), 0.001);
+        assertEquals("page_1", entry.get("pageref"));
+    }
+
+    @Test
+    public void redirectHopsBecomeSeparateEntriesOfOnePage() {
+        capture.handle(event("Network.requestWillBeSent", "{'requestId':'1','frameId':'F1','type':'Document','timestamp':1.0,'wallTime':1600000000.0,"
+                + "'request':{'url':'http://localhost/','method':'GET'}}"));
+        capture.handle(event("Network.requestWillBeSent", "{'requestId':'1','frameId':'F1','type':'Document','timestamp':1.1,'wallTime':1600000000.1,"
+                + "'request':{'url':'http://localhost/login','method':'GET'},"
+                + "'redirectResponse':{'status':302,'statusText':'Found','mimeType':'text/html','encodedDataLength':100}}"));
+        capture.handle(event("Network.loadingFinished", "{'requestId':'1','timestamp':1.3,'encodedDataLength':5000}"));
+
+        assertEquals(2, entries.size());
+        assertEquals("http://localhost/", request(entries.get(0)).get("url"));
+        assertEquals(302L, response(entries.get(0)).get("status"));
+        assertEquals(100L, response(entries.get(0)).get("bodySize"));
+        assertEquals("http://localhost/login", request(entries.get(1)).get("url"));
+        assertEquals(5000L, response(entries.get(1)).get("bodySize"));
+        assertEquals(1, capture.getPages().size());
+    }
+
+    @Test
+    public void onlyMainFrameDocumentsStartPages() {
+        capture.handle(event("Network.requestWillBeSent", "{'requestId':'1','frameId':'F1','type':'Document','timestamp':1.0,'wallTime':1600000000.0,"
+                + "'request':{'url':'http://localhost/login','method':'GET'}}"));
+        capture.handle(event("Network.requestWillBeSent", "{'requestId':'2','frameId':'F2','type':'Document','timestamp':1.1,'wallTime':1600000000.1,"
+                + "'request':{'url':'http://localhost/iframe','method':'GET'}}"));
+        capture.handle(event("Network.requestWillBeSent", "{'requestId':'3','frameId':'F1','type':'Script','timestamp':1.2,'wallTime':1600000000.2,"
+                + "'request':{'url':'http://localhost/app.js','method':'GET'}}"));
+        assertEquals(1, capture.getPages().size());
+
+        capture.handle(event("Network.requestWillBeSent", "{'requestId':'4','frameId':'F1','type':'Document','timestamp':2.0,'wallTime':1600000001.0,"
+                + "'request':{'url':'http://localhost/landing','method':'POST'}}"));
+        capture.handle(event("Network.loadingFailed", "{'requestId':'4','timestamp':2.5}"));
+
+        List<JSONObject> pages = capture.getPages();
+        assertEquals(2, pages.size());
+        assertEquals("http://localhost/landing", pages.get(1).get("title"));
+        assertEquals(1, entries.size());
+        assertEquals("page_2", entries.get(0).get("pageref"));
+        assertEquals(0L, response(entries.get(0)).get("status"));
+    }
+
+    @Test
+    public void otherEventsAndMalformedMessagesAreIgnored() {
+        capture.handle("not json");
+        capture.handle("{\"webview\":\"1\"}");
+        capture.handle(event("Page.loadEventFired", "{'timestamp':1.0}"));
+        capture.handle(event("Network.loadingFinished", "{'requestId':'unknown','timestamp':1.0,'encodedDataLength':10}"));
+        assertTrue(entries.isEmpty());
+        assertTrue(capture.getPages().isEmpty());
+    }
+
+    /**
+     * @param params JSON with ' for " to keep the tests readable
+     * @return a performance log message the way Chrome writes it
+     */
+    private static String event(String method, String params) {
+        return "{\"message\":{\"method\":\"" + method + "\",\"params\":" + params.replace('\'', '"') + "},\"webview\":\"1\"}";
+    }
+
+    private static JSONObject request(JSONObject entry) {
+        return (JSONObject) entry.get("request");
+    }
+
+    private static JSONObject response(JSONObject entry) {
+        return (JSONObject) entry.get("response");
+    }
+}
@@ -0,0 +1,31 @@
+package SeleniumHelpers;
+
+
+/**
+ * A locator and the state it has to be in for a page to count as loaded, see PageObject.waitUntilReady.
+ */
+public class PageCondition {
+    public final Locator locator;
+    public final DomWaits.State state;
+
+    public PageCondition(Locator locator, DomWaits.State state) {
+        this.locator = locator;
+        this.state = state;
+    }
+
+    public static PageCondition present(Locator locator) {
+        return new PageCondition(locator, DomWaits.State.PRESENT);
+    }
+
+    public static PageCondition visible(Locator locator) {
+        return new PageCondition(locator, DomWaits.State.VISIBLE);
+    }
+
+    public static PageCondition invisible(Locator locator) {
+        return new PageCondition(locator, DomWaits.State.INVISIBLE);
+    }
+
+    public String toString() {
+        return locator.name + " " + state.name().toLowerCase();
+    }
+}
@@ -0,0 +1,103 @@
+package SeleniumHelpers;
+
+
+import org.openqa.selenium.WebDriverException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Navigation, Paint and Resource Timing of one page load, in milliseconds since navigation start, collected from the
+ * browser with a single script. Each document is collected once its load event has finished, so waiting for the same
+ * page again records nothing.
+ */
+public class PageTimings {
+    public static final String TTFB = "ttfb";
+    public static final String DOM_INTERACTIVE = "domInteractive";
+    public static final String DOM_CONTENT_LOADED = "domContentLoaded";
+    public static final String LOAD = "load";
+    public static final String FIRST_PAINT = "firstPaint";
+    public static final String FIRST_CONTENTFUL_PAINT = "firstContentfulPaint";
+    public static final String SLOWEST_RESOURCE = "slowestResource";
+    private static final String[] MILLIS_METRICS = {TTFB, DOM_INTERACTIVE, DOM_CONTENT_LOADED, LOAD, FIRST_PAINT, FIRST_CONTENTFUL_PAINT, SLOWEST_RESOURCE};
+
+    private final Map<String, Double> millis = new LinkedHashMap<>();
+    private long resourceCount;
+    private long resourceBytes;
+    private String slowestResourceName;
+
+    private PageTimings() {
+    }
+
+    /**
+     * @return timings of the current document, or null if the browser has none, the document is still loading
+     * or they were collected already
+     */
+    public static PageTimings collect(Driver driver) {
+        Object result;
+        try {
+            result = driver.executeScript(BrowserScripts.PAGE_TIMINGS);
+        }
+        catch (WebDriverException | UnsupportedOperationException e) {
+            driver.getLogger().info("Unable to collect page timings: " + e.getMessage());
+            return null;
+        }
+        if (!(result instanceof Map))
+            return null;
+        Map<?, ?> values = (Map<?, ?>) result;
+        PageTimings timings = new PageTimings();
+        for (String metric : MILLIS_METRICS) {
+            Object value = values.get(metric);
+            // events that haven't fired yet are 0, or negative in the legacy performance.timing
+            if (value instanceof Number && ((Number) value).doubleValue() > 0) {
+                timings.millis.put(metric, ((Number) value).doubleValue());
+            }
+        }
+        timings.resourceCount = number(values.get("resourceCount"));
+        timings.resourceBytes = number(values.get("resourceBytes"));
+        Object slowestName = values.get("slowestResourceName");
+        timings.slowestResourceName = slowestName == null ? null : slowestName.toString();
+        return timings;
+    }
+
+    /**
+     * Records every timing in the metrics as "page.<metric>" under the page name, e.g. "page.load[LoginPage]".
+     */
+    public void record(CommandMetrics metrics, String pageName) {
+        for (Map.Entry<String, Double> entry : millis.entrySet()) {
+            metrics.record("page." + entry.getKey(), pageName, (long) (entry.getValue() * 1000000));
+        }
+    }
+
+    /**
+     * @return the metric in milliseconds, or null if the browser didn't report it
+     */
+    public Double get(String metric) {
+        return millis.get(metric);
+    }
+
+    public long getResourceCount() {
+        return resourceCount;
+    }
+
+    public long getResourceBytes() {
+        return resourceBytes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        for (Map.Entry<String, Double> entry : millis.entrySet()) {
+            description.append(String.format("%s=%.0f ms, ", entry.getKey(), entry.getValue()));
+        }
+        description.append(resourceCount).append(" resources, ").append(resourceBytes / 1024).append(" KB");
+        if (slowestResourceName != null) {
+            description.append(", slowest ").append(slowestResourceName);
+        }
+        return description.toString();
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
@@ -0,0 +1,73 @@
+package SeleniumHelpers;
+
+
+import org.junit.runners.Parameterized;
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drop-in replacement for the Parameterized runner that runs the parameter rows concurrently.
+ * Each row is still a separate test instance, so each row must use its own Driver (see DriverPool).
+ *
+ * Parallelism limit is taken from -DWebdriver.Parallelism, then the ParallelRows session property,
+ * and defaults to the number of available cores.
+ * On Java 21+ each row runs on its own virtual thread (see VirtualThreads), still at most that many at a time.
+ *
+ * Example:  @RunWith(ParallelParameterized.class)
+ */
+public class ParallelParameterized extends Parameterized {
+
+    public ParallelParameterized(Class<?> klass) throws Throwable {
+        super(klass);
+        setScheduler(new RowScheduler(klass.getSimpleName(), getParallelism()));
+    }
+
+    public static int getParallelism() {
+        String parallelism = System.getProperty("Webdriver.Parallelism");
+        if (parallelism == null) {
+            return Math.max(1, Settings.getInt("ParallelRows", Runtime.getRuntime().availableProcessors()));
+        }
+        try {
+            return Math.max(1, Integer.parseInt(parallelism.trim()));
+        }
+        catch (NumberFormatException e) {
+            throw new TestError("Parallelism must be a whole number, but was '" + parallelism + "'");
+        }
+    }
+
+    private static class RowScheduler implements RunnerScheduler {
+        private final ExecutorService executor;
+        private final Semaphore rowPermits;
+
+        RowScheduler(String testName, int parallelism) {
+            executor = VirtualThreads.newPerTaskExecutor(testName + "-row", parallelism, new K1Logger().setUpLogger("ParallelParameterized"));
+            rowPermits = new Semaphore(parallelism);
+        }
+
+        public void schedule(Runnable childStatement) {
+            executor.submit(() -> {
+                rowPermits.acquireUninterruptibly(); // a virtual thread executor doesn't limit parallelism itself
+                try {
+                    childStatement.run();
+                }
+                finally {
+                    rowPermits.release();
+                }
+            });
+        }
+
+        public void finished() {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
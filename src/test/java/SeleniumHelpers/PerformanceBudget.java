@@ -0,0 +1,71 @@
+package SeleniumHelpers;
+
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Upper limit for one of a page's PageTimings, e.g. PerformanceBudget.of(PageTimings.DOM_CONTENT_LOADED, 800).
+ * Pages declare their budgets and they are checked every time the page loads.
+ *
+ * Settings (read through Settings):
+ * PerformanceBudgetPolicy - FAIL to fail the test when a budget is exceeded, WARN to only log it (default WARN)
+ */
+public class PerformanceBudget {
+    public enum Policy { FAIL, WARN }
+
+    private static final Policy POLICY = Settings.getEnum("PerformanceBudgetPolicy", Policy.class, Policy.WARN);
+
+    private final String metric;
+    private final double maxMillis;
+
+    private PerformanceBudget(String metric, double maxMillis) {
+        this.metric = metric;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @param metric one of the PageTimings metrics
+     * @param maxMillis the most the metric may take
+     */
+    public static PerformanceBudget of(String metric, double maxMillis) {
+        return new PerformanceBudget(metric, maxMillis);
+    }
+
+    /**
+     * @return description of how the timings exceed this budget or that they lack its metric, or null if they are
+     * within it
+     */
+    public String check(PageTimings timings) {
+        Double actual = timings.get(metric);
+        if (actual == null)
+            return String.format("%s wasn't reported, budget is %.0f ms", metric, maxMillis);
+        if (actual <= maxMillis)
+            return null;
+        return String.format("%s took %.0f ms, budget is %.0f ms", metric, actual, maxMillis);
+    }
+
+    /**
+     * Checks the timings against all the budgets and applies the PerformanceBudgetPolicy to the ones exceeded,
+     * and to the ones whose metric the browser didn't report, as those can't be checked.
+     * @throws TestError if a budget was exceeded or couldn't be checked and the policy is FAIL
+     */
+    public static void enforce(String pageName, PageTimings timings, Logger logger, PerformanceBudget... budgets) {
+        List<String> exceeded = new ArrayList<>();
+        for (PerformanceBudget budget : budgets) {
+            String violation = budget.check(timings);
+            if (violation != null) {
+                exceeded.add(violation);
+            }
+        }
+        if (exceeded.isEmpty())
+            return;
+        String message = pageName + " missed its performance budget: " + String.join("; ", exceeded);
+        if (POLICY == Policy.FAIL)
+            throw new TestError(message);
+        logger.warn(message);
+    }
+
+}
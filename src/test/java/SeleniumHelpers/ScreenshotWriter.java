@@ -0,0 +1,154 @@
+package SeleniumHelpers;
+
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes screenshots in the background. The test thread only captures the PNG bytes, decoding, optional downscaling
+ * and JPEG compression and the disk write happen on a small shared pool. When the pool's queue is full the test
+ * thread writes the screenshot itself, so a burst of screenshots slows the test down instead of piling up in memory.
+ *
+ * Settings (read through Settings):
+ * ScreenshotThreads     - background writer threads shared by all Drivers (default 2)
+ * ScreenshotQueueSize   - screenshots waiting to be written before the test thread has to help (default 16)
+ * ScreenshotScale       - scale factor, e.g. 0.5 for half size (default 1, no scaling)
+ * ScreenshotFormat      - PNG or JPG (default PNG)
+ * ScreenshotJpegQuality - 0.0 to 1.0 (default 0.8)
+ */
+public class ScreenshotWriter {
+    private static final ThreadPoolExecutor executor = createExecutor();
+    private static final double scale = Settings.getDouble("ScreenshotScale", 1.0);
+    private static final boolean jpeg = "JPG".equalsIgnoreCase(Settings.getString("ScreenshotFormat"))
+            || "JPEG".equalsIgnoreCase(Settings.getString("ScreenshotFormat"));
+    private static final float jpegQuality = (float) Settings.getDouble("ScreenshotJpegQuality", 0.8);
+
+    private final Driver driver;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object lock = new Object();
+
+    public ScreenshotWriter(Driver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Queues the screenshot to be written to target/fileName.png (or .jpg).
+     * @param png screenshot as captured from the browser
+     * @param fileName file name without extension
+     */
+    public void write(byte[] png, String fileName) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                save(png, fileName);
+            }
+            catch (IOException | RuntimeException e) {
+                driver.getLogger().info("IOError saving screenshot " + fileName + ": " + e.toString());
+            }
+            finally {
+                synchronized (lock) {
+                    if (pending.decrementAndGet() == 0)
+                        lock.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until all screenshots this Driver has queued are on disk.
+     * @param timeoutMillis how long to wait at most
+     * @return true if all were written
+     */
+    public boolean awaitCompletion(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                try {
+                    lock.wait(remaining);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    private static void save(byte[] png, String fileName) throws IOException {
+        File file = new File("target", fileName + (jpeg ? ".jpg" : ".png"));
+        file.getParentFile().mkdirs();
+        if (!jpeg && scale == 1.0) { // nothing to re-encode, the browser's PNG goes straight to disk
+            Files.write(file.toPath(), png);
+            return;
+        }
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        if (image == null)
+            throw new IOException("Screenshot is not a readable image.");
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage output = new BufferedImage(width, height, jpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = output.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        }
+        finally {
+            graphics.dispose();
+        }
+        if (!jpeg) {
+            ImageIO.write(output, "png", file);
+            return;
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext())
+            throw new IOException("No JPEG writer available.");
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(output, null, null), param);
+        }
+        finally {
+            writer.dispose();
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        int threads = Settings.getInt("ScreenshotThreads", 2);
+        int queueSize = Settings.getInt("ScreenshotQueueSize", 16);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "screenshot-writer-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,134 @@
+package SeleniumHelpers;
+
+
+import org.joda.time.DateTime;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Logged-in browser state (cookies, localStorage, sessionStorage and the page the login landed on) per username,
+ * captured after a UI login so that later tests can restore it and go straight to the application.
+ * Shared by all threads. Entries expire after SessionCacheTtlSeconds (default 900) or when one of their cookies does.
+ */
+public class SessionStateCache {
+    private static SessionStateCache instance;
+
+    private final Map<String, SessionState> states = new ConcurrentHashMap<>();
+    private final int ttlSeconds;
+
+    private static class SessionState {
+        private final Set<Cookie> cookies;
+        private final Map<String, Object> localStorage;
+        private final Map<String, Object> sessionStorage;
+        private final String landingUrl;
+        private final DateTime expires;
+
+        private SessionState(Set<Cookie> cookies, Map<String, Object> localStorage, Map<String, Object> sessionStorage,
+                             String landingUrl, DateTime expires) {
+            this.cookies = cookies;
+            this.localStorage = localStorage;
+            this.sessionStorage = sessionStorage;
+            this.landingUrl = landingUrl;
+            this.expires = expires;
+        }
+
+        private boolean isExpired() {
+            if (expires.isBeforeNow())
+                return true;
+            Date now = new Date();
+            for (Cookie cookie : cookies) {
+                if (cookie.getExpiry() != null && cookie.getExpiry().before(now))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    public static synchronized SessionStateCache getInstance() {
+        if (instance == null) {
+            instance = new SessionStateCache(Settings.getInt("SessionCacheTtlSeconds", 900));
+        }
+        return instance;
+    }
+
+    public SessionStateCache(int ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    /**
+     * Captures the logged-in state of the driver's current page. Call it right after a successful UI login.
+     * @param username key to store the state under
+     * @param driver driver that is logged in and on the page the login landed on
+     */
+    @SuppressWarnings("unchecked")
+    public void capture(String username, Driver driver) {
+        List<?> storage = (List<?>) driver.executeScript(BrowserScripts.CAPTURE_STORAGE);
+        SessionState state = new SessionState(
+                Collections.unmodifiableSet(new HashSet<>(driver.manage().getCookies())),
+                new HashMap<>((Map<String, Object>) storage.get(0)),
+                new HashMap<>((Map<String, Object>) storage.get(1)),
+                (String) storage.get(2),
+                new DateTime().plusSeconds(ttlSeconds));
+        states.put(username, state);
+        driver.getLogger().info("Cached session of " + username + ": " + state.cookies.size() + " cookies, "
+                + state.localStorage.size() + " localStorage and " + state.sessionStorage.size() + " sessionStorage entries.");
+    }
+
+    /**
+     * Restores the cached state and navigates to the page the login landed on.
+     * The driver has to be on a page of the application already, e.g. the login page, so that the browser
+     * accepts the cookies and storage for its origin.
+     * @return false if there is no usable cached state for the user, the driver is left where it was
+     * (if restoring failed part way, the cached state is forgotten and the cookies are deleted)
+     */
+    public boolean restore(String username, Driver driver) {
+        SessionState state = states.get(username);
+        if (state == null)
+            return false;
+        if (state.isExpired()) {
+            driver.getLogger().info("Cached session of " + username + " has expired.");
+            states.remove(username, state);
+            return false;
+        }
+        try {
+            for (Cookie cookie : state.cookies) {
+                driver.manage().addCookie(cookie);
+            }
+            driver.executeScript(BrowserScripts.RESTORE_STORAGE, state.localStorage, state.sessionStorage);
+        }
+        catch (WebDriverException e) {
+            driver.getLogger().info("Could not restore cached session of " + username + ": " + e.getMessage());
+            invalidate(username);
+            try {
+                driver.manage().deleteAllCookies(); // don't leave half a session behind for the UI login
+            }
+            catch (WebDriverException cleanupError) {
+                driver.getLogger().info("Could not clear the partly restored cookies: " + cleanupError.getMessage());
+            }
+            return false;
+        }
+        driver.getLogger().info("Restored cached session of " + username + ", go to " + state.landingUrl);
+        driver.get(state.landingUrl);
+        return true;
+    }
+
+    /**
+     * Forgets the user's cached state, e.g. because the server no longer accepted it.
+     */
+    public void invalidate(String username) {
+        states.remove(username);
+    }
+
+    public boolean contains(String username) {
+        return states.containsKey(username);
+    }
+}
@@ -0,0 +1,148 @@
+package SeleniumHelpers;
+
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Typed access to SessionProperties for the framework's tuning settings. A setting that is unset (missing, or a
+ * "$..." placeholder nobody filled in) gives the default. So does one that can't be parsed, with a warning in
+ * target/Settings.log, so that a typo in one setting doesn't break every class that reads it.
+ * Classes list the settings they read in their class comment.
+ */
+public final class Settings {
+    private static final ThreadLocal<List<String>> pendingWarnings = new ThreadLocal<>();
+
+    private Settings() {
+    }
+
+    /**
+     * @return the trimmed value, or null if the setting is unset
+     */
+    public static String getString(String name) {
+        return valueOf(SessionProperties.getInstance().getProperty(name));
+    }
+
+    /**
+     * @param property value as read from SessionProperties
+     * @return the trimmed value, or null if it is missing or a "$..." placeholder
+     */
+    static String valueOf(String property) {
+        return property == null || property.startsWith("$") ? null : property.trim();
+    }
+
+    public static String getString(String name, String defaultValue) {
+        String value = getString(name);
+        return value == null ? defaultValue : value;
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        String value = getString(name);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            return invalid(name, value, "a whole number", defaultValue);
+        }
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        String value = getString(name);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException e) {
+            return invalid(name, value, "a whole number", defaultValue);
+        }
+    }
+
+    public static double getDouble(String name, double defaultValue) {
+        String value = getString(name);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e) {
+            return invalid(name, value, "a number", defaultValue);
+        }
+    }
+
+    /**
+     * @return true for TRUE, false for FALSE (in any case), otherwise the default
+     */
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name);
+        if (value == null)
+            return defaultValue;
+        if (value.equalsIgnoreCase("TRUE"))
+            return true;
+        if (value.equalsIgnoreCase("FALSE"))
+            return false;
+        return invalid(name, value, "TRUE or FALSE", defaultValue);
+    }
+
+    /**
+     * @return the constant named by the setting (in any case), otherwise the default
+     */
+    public static <E extends Enum<E>> E getEnum(String name, Class<E> type, E defaultValue) {
+        String value = getString(name);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        }
+        catch (IllegalArgumentException e) {
+            return invalid(name, value, "one of " + Arrays.toString(type.getEnumConstants()), defaultValue);
+        }
+    }
+
+    /**
+     * @return the comma separated whole numbers of the setting, e.g. "0,50,200", otherwise the defaults
+     */
+    public static long[] getLongs(String name, long... defaultValues) {
+        String value = getString(name);
+        if (value == null || value.isEmpty())
+            return defaultValues;
+        String[] parts = value.split(",");
+        long[] values = new long[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Long.parseLong(parts[i].trim());
+            }
+            return values;
+        }
+        catch (NumberFormatException e) {
+            return invalid(name, value, "comma separated whole numbers", defaultValues);
+        }
+    }
+
+    private static <T> T invalid(String name, String value, String expected, T defaultValue) {
+        String message = name + " must be " + expected + ", but was '" + value + "'. Using the default instead.";
+        List<String> pending = pendingWarnings.get();
+        if (pending != null) { // setting up the log reads settings itself, so warn about those once it is set up
+            pending.add(message);
+            return defaultValue;
+        }
+        pending = new ArrayList<>();
+        pending.add(message);
+        pendingWarnings.set(pending);
+        try {
+            Logger logger = new K1Logger().setUpLogger("Settings");
+            for (String warning : pending) {
+                logger.warn(warning);
+            }
+        }
+        finally {
+            pendingWarnings.remove();
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,136 @@
+package SeleniumHelpers;
+
+
+import org.openqa.selenium.StaleElementReferenceException;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Retry policy for element interactions that fail with StaleElementReferenceException because the page re-rendered
+ * the element. Each retry re-resolves the element (the action passed in finds it again), after a pause from the
+ * backoff schedule, up to a maximum number of attempts. Stale hits are counted per locator, so components that
+ * re-render excessively show up at quit().
+ * A run nested in another run on the same thread, e.g. a CachedWebElement call inside a page object's retried
+ * action, neither retries nor counts: the outer run does both, so a stale element costs at most the max attempts.
+ *
+ * Settings (read through Settings):
+ * StaleRetryMaxAttempts   - attempts including the first one (default 4)
+ * StaleRetryBackoffMillis - pauses before the 2nd, 3rd, ... attempt, the last one repeats (default 0,50,200)
+ */
+public class StaleElementRetry {
+    private static final int MAX_ATTEMPTS = Math.max(1, Settings.getInt("StaleRetryMaxAttempts", 4));
+    private static final long[] BACKOFF_MILLIS = Settings.getLongs("StaleRetryBackoffMillis", 0, 50, 200);
+
+    private final Driver driver;
+    private final int maxAttempts;
+    private final long[] backoffMillis;
+    private final LongConsumer pause;
+    private final Map<String, AtomicLong> staleCounts = new ConcurrentHashMap<>();
+    private final ThreadLocal<Integer> depth = ThreadLocal.withInitial(() -> 0);
+
+    public StaleElementRetry(Driver driver) {
+        this(driver, MAX_ATTEMPTS, BACKOFF_MILLIS, StaleElementRetry::sleep);
+    }
+
+    /**
+     * @param pause waits the given milliseconds before a retry
+     */
+    StaleElementRetry(Driver driver, int maxAttempts, long[] backoffMillis, LongConsumer pause) {
+        this.driver = driver;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+        this.pause = pause;
+    }
+
+    /**
+     * Runs the action, retrying it on StaleElementReferenceException.
+     * @param locatorName name the stale hits are counted under
+     * @param action finds the element and interacts with it
+     * @return the action's result
+     * @throws StaleElementReferenceException if the element was still stale after the last attempt
+     */
+    public <T> T run(String locatorName, Supplier<T> action) {
+        return run(locatorName, action, null);
+    }
+
+    /**
+     * Runs the action, retrying it on StaleElementReferenceException.
+     * @param locatorName name the stale hits are counted under
+     * @param action interacts with the element
+     * @param reResolve called before each retry to find the element again, null if the action finds it itself
+     * @return the action's result
+     * @throws StaleElementReferenceException if the element was still stale after the last attempt
+     */
+    public <T> T run(String locatorName, Supplier<T> action, Runnable reResolve) {
+        if (depth.get() > 0) // the outer run retries and counts for this one
+            return action.get();
+        depth.set(1);
+        try {
+            return retry(locatorName, action, reResolve);
+        }
+        finally {
+            depth.remove();
+        }
+    }
+
+    private <T> T retry(String locatorName, Supplier<T> action, Runnable reResolve) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            }
+            catch (StaleElementReferenceException e) {
+                staleCounts.computeIfAbsent(locatorName, key -> new AtomicLong()).incrementAndGet();
+                if (attempt >= maxAttempts) {
+                    driver.getLogger().info("Element " + locatorName + " still stale after " + attempt + " attempts.");
+                    throw e;
+                }
+                long pauseMillis = backoffMillis[Math.min(attempt - 1, backoffMillis.length - 1)];
+                driver.getLogger().info("Element " + locatorName + " is stale, find it again" + (pauseMillis > 0 ? " in " + pauseMillis + " ms" : ""));
+                pause.accept(pauseMillis);
+                if (reResolve != null) {
+                    reResolve.run();
+                }
+            }
+        }
+    }
+
+    public void run(String locatorName, Runnable action) {
+        run(locatorName, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return number of times each locator was found stale, by locator name
+     */
+    public Map<String, Long> getStaleCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : staleCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    public long getStaleCount(String locatorName) {
+        AtomicLong count = staleCounts.get(locatorName);
+        return count == null ? 0 : count.get();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TestError("Interrupted while waiting to retry a stale element.");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package SeleniumHelpers;
+
+
+import org.junit.Test;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.StaleElementReferenceException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class StaleElementRetryTest {
+    private final List<Long> pauses = new ArrayList<>();
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Test
+    public void retriesUntilTheElementIsNoLongerStale() {
+        StaleElementRetry retry = retry(4, 0, 50, 200);
+        String result = retry.run("BUTTON", () -> {
+            if (attempts.incrementAndGet() < 3)
+                throw new StaleElementReferenceException("re-rendered");
+            return "clicked";
+        });
+        assertEquals("clicked", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, retry.getStaleCount("BUTTON"));
+        assertEquals(Arrays.asList(0L, 50L), pauses);
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        StaleElementRetry retry = retry(4, 0, 50, 200);
+        try {
+            retry.run("BUTTON", () -> {
+                attempts.incrementAndGet();
+                throw new StaleElementReferenceException("re-rendered");
+            });
+            fail("still stale element wasn't reported");
+        }
+        catch (StaleElementReferenceException e) {
+            assertEquals(4, attempts.get());
+            assertEquals(4, retry.getStaleCount("BUTTON"));
+            assertEquals(Arrays.asList(0L, 50L, 200L), pauses);
+        }
+    }
+
+    @Test
+    public void lastBackoffRepeats() {
+        StaleElementRetry retry = retry(6, 10, 20);
+        try {
+            retry.run("BUTTON", () -> {
+                throw new StaleElementReferenceException("re-rendered");
+            });
+            fail("still stale element wasn't reported");
+        }
+        catch (StaleElementReferenceException e) {
+            assertEquals(Arrays.asList(10L, 20L, 20L, 20L, 20L), pauses);
+        }
+    }
+
+    @Test
+    public void reResolvesBeforeEachRetry() {
+        StaleElementRetry retry = retry(4, 0);
+        AtomicInteger reResolves = new AtomicInteger();
+        retry.run("FIELD", () -> {
+            if (attempts.incrementAndGet() < 4)
+                throw new StaleElementReferenceException("re-rendered");
+            assertEquals(attempts.get() - 1, reResolves.get());
+            return null;
+        }, reResolves::incrementAndGet);
+        assertEquals(3, reResolves.get());
+    }
+
+    @Test
+    public void nestedRunsNeitherRetryNorCount() {
+        StaleElementRetry retry = retry(4, 0);
+        AtomicInteger innerAttempts = new AtomicInteger();
+        String result = retry.run("OUTER", () -> retry.run("INNER", () -> {
+            if (innerAttempts.incrementAndGet() < 3)
+                throw new StaleElementReferenceException("re-rendered");
+            return "found";
+        }));
+        assertEquals("found", result);
+        assertEquals(3, innerAttempts.get());
+        assertEquals(2, retry.getStaleCount("OUTER"));
+        assertEquals(0, retry.getStaleCount("INNER"));
+
+        // the outer run is over, so a run on its own retries again
+        innerAttempts.set(0);
+        retry.run("INNER", () -> {
+            if (innerAttempts.incrementAndGet() < 2)
+                throw new StaleElementReferenceException("re-rendered");
+            return null;
+        });
+        assertEquals(1, retry.getStaleCount("INNER"));
+    }
+
+    @Test
+    public void otherExceptionsAreNotRetried() {
+        StaleElementRetry retry = retry(4, 0);
+        try {
+            retry.run("MISSING", () -> {
+                attempts.incrementAndGet();
+                throw new NoSuchElementException("not there");
+            });
+            fail("exception wasn't passed on");
+        }
+        catch (NoSuchElementException e) {
+            assertEquals(1, attempts.get());
+            assertEquals(0, retry.getStaleCount("MISSING"));
+        }
+    }
+
+    private StaleElementRetry retry(int maxAttempts, long... backoffMillis) {
+        return new StaleElementRetry(new Driver("StaleElementRetryTest", null), maxAttempts, backoffMillis, pauses::add);
+    }
+}
@@ -14,6 +14,7 @@ import java.io.Serializable;
 import java.util.List;
 
 public abstract class Using extends By {
+    private static volatile Logger warningLogger;
 
     public static By locator(final Locator locator) {
         if (locator == null)
@@ -41,44 +42,27 @@ public abstract class Using extends By {
     }
 
     public static Locator processVariableLocator(Locator locator, String... variables) {
-        Locator processedLocator = new Locator(locator.name, locator.locatorText);
-        int totalVars = variables.length;
-        if(totalVars > 0) {
-            if(totalVars == 1) {
-                processedLocator.locatorText = processedLocator.locatorText.replace("{}","{1}");
-            }
-            for (int i = 0; i < totalVars; i++) {
-                if (i == 0) {
-                    processedLocator.name += "(" + variables[i];
-                }
-                else if (i > 0 && i < totalVars) {
-                    if (totalVars > 1) {
-                        {
-                            processedLocator.name += ", " + variables[i];
-                        }
-                    }
-                    else {
-                        {
-                            processedLocator.name += variables[i];
-                        }
-                    }
-                }
-                if (i == totalVars - 1) {
-                    processedLocator.name += ")";
-                }
-                if (processedLocator.locatorText.indexOf("{" + (i + 1) + "}") > -1) {
-                    processedLocator.locatorText = processedLocator.locatorText.replace("{" + (i + 1) + "}", variables[i]);
-                }
-                else {
-                    Logger logger = new K1Logger().setUpLogger("Using"); // Not ideal that we have another log file, but this is a static method
-                    logger.info("WARNING: Some of the supplied variables are NOT used by the locator: " + locator.toString());
+        CompiledLocator compiled = locator.compiled();
+        if (variables.length == 0 && !compiled.hasSlots()) {
+            return locator; // nothing to substitute, the locator is never modified by ByLocator
+        }
+        return compiled.resolve(locator, variables);
+    }
+
+    /**
+     * Logs a locator warning. This is a static method, so all warnings share a single "Using" log file.
+     */
+    static void warn(String message) {
+        Logger logger = warningLogger;
+        if (logger == null) {
+            synchronized (Using.class) {
+                if (warningLogger == null) {
+                    warningLogger = new K1Logger().setUpLogger("Using"); // Not ideal that we have another log file, but this is a static method
                 }
+                logger = warningLogger;
             }
         }
-        if(processedLocator.locatorText.split("\\{([0-9]*)\\}").length > 1) { // we still have a {N} in the locator
-            throw new TestError("TEST/LOCATOR ERROR: Insufficient parameters supplied for dynamic locator");
-        }
-        return processedLocator;
+        logger.info(message);
     }
 
     public static class ByLocator extends By implements Serializable {
@@ -89,29 +73,33 @@ public abstract class Using extends By {
             this.locator = locator;
         }
 
+        public Locator getLocator() {
+            return locator;
+        }
+
         @Override
         public List<WebElement> findElements(SearchContext context) {
-            if(locator.locatorText.toLowerCase().startsWith("xpath=")) {
-                return ((FindsByXPath) context).findElementsByXPath(locator.locatorText.substring(6));
-            }
-            else if(locator.locatorText.toLowerCase().startsWith("css=")) {
-                return ((FindsByCssSelector) context).findElementsByCssSelector(locator.locatorText.substring(4));
-            }
-            else {
-                throw new WebDriverException("Unknown locator type used for locator: " + locator.toString());
+            CompiledLocator compiled = locator.compiled();
+            switch (compiled.strategy) {
+                case XPATH:
+                    return ((FindsByXPath) context).findElementsByXPath(compiled.selector);
+                case CSS:
+                    return ((FindsByCssSelector) context).findElementsByCssSelector(compiled.selector);
+                default:
+                    throw new WebDriverException("Unknown locator type used for locator: " + locator.toString());
             }
         }
 
         @Override
         public WebElement findElement(SearchContext context) {
-            if(locator.locatorText.toLowerCase().startsWith("xpath=")) {
-                return ((FindsByXPath) context).findElementByXPath(locator.locatorText.substring(6));
-            }
-            else if(locator.locatorText.toLowerCase().startsWith("css=")) {
-                return ((FindsByCssSelector) context).findElementByCssSelector(locator.locatorText.substring(4));
-            }
-            else {
-                throw new WebDriverException("Unknown locator type used for locator: " + locator.toString());
+            CompiledLocator compiled = locator.compiled();
+            switch (compiled.strategy) {
+                case XPATH:
+                    return ((FindsByXPath) context).findElementByXPath(compiled.selector);
+                case CSS:
+                    return ((FindsByCssSelector) context).findElementByCssSelector(compiled.selector);
+                default:
+                    throw new WebDriverException("Unknown locator type used for locator: " + locator.toString());
             }
         }
 
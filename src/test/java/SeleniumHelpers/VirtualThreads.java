@@ -0,0 +1,64 @@
+package SeleniumHelpers;
+
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Virtual thread executors when the JVM has them (Java 21+), looked up by reflection because the project is
+ * compiled for Java 1.8. On older JVMs a fixed pool of platform threads is used instead.
+ *
+ * Settings (read through Settings):
+ * VirtualThreads - FALSE to always use platform threads (default TRUE, virtual threads when available)
+ */
+public class VirtualThreads {
+    private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutorFactory();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if this JVM has virtual threads and they aren't switched off
+     */
+    public static boolean isEnabled() {
+        if (NEW_VIRTUAL_EXECUTOR == null)
+            return false;
+        return Settings.getBoolean("VirtualThreads", true);
+    }
+
+    /**
+     * @param name prefix of the platform thread names, if it comes to that
+     * @param fallbackThreads size of the platform thread pool used without virtual threads
+     * @param logger where to log which kind of executor was created
+     * @return an executor starting a virtual thread per task, or a fixed platform thread pool
+     */
+    public static ExecutorService newPerTaskExecutor(String name, int fallbackThreads, Logger logger) {
+        if (isEnabled()) {
+            try {
+                ExecutorService executor = (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+                logger.info("Run " + name + " tasks on virtual threads.");
+                return executor;
+            }
+            catch (ReflectiveOperationException e) {
+                logger.info("Unable to create a virtual thread executor, fall back to platform threads: " + e.toString());
+            }
+        }
+        logger.info("Run " + name + " tasks on " + fallbackThreads + " platform threads.");
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(fallbackThreads,
+                runnable -> new Thread(runnable, name + "-" + threadCount.incrementAndGet()));
+    }
+
+    private static Method findVirtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package SeleniumHelpers;
+
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Remembers the title and URL last seen in each of a Driver's windows, so that finding a window doesn't mean
+ * switching into every window on every poll. Each poll fetches the handles once and only switches into windows
+ * that are new, still loading (blank or recently opened) or haven't been looked at for a while. Windows already known
+ * to match are switched to directly and double-checked.
+ */
+public class WindowRegistry {
+    private static final long SETTLE_MILLIS = 2000;
+    private static final long STALE_MILLIS = 5000;
+
+    private final Driver driver;
+    private final Map<String, WindowInfo> windows = new LinkedHashMap<>();
+    private String current;
+
+    private static class WindowInfo {
+        private final long firstSeen = System.currentTimeMillis();
+        private long inspected;
+        private String title = "";
+        private String url = "";
+
+        private String get(boolean isTitle) {
+            return isTitle ? title : url;
+        }
+
+        private boolean needsInspection(long now) {
+            return inspected == 0
+                    || now - inspected > STALE_MILLIS
+                    || now - firstSeen < SETTLE_MILLIS
+                    || title.isEmpty() || url.isEmpty() || url.equals("about:blank");
+        }
+    }
+
+    public WindowRegistry(Driver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Switches to the first window whose title (or URL) matches, waiting for it to open if necessary.
+     * @param isTitle true to match titles, false to match URLs
+     * @param matches test for the title or URL
+     * @param timeoutMillis how long to wait for the window
+     * @param polls incremented by how many times the window handles were polled
+     * @return handle of the window switched to
+     * @throws TimeoutException if no window matched in time, the message lists the windows that were seen
+     */
+    public synchronized String switchToMatching(boolean isTitle, Predicate<String> matches, long timeoutMillis, AtomicInteger polls) {
+        WebDriver webDriver = driver.getWebDriver();
+        try {
+            current = webDriver.getWindowHandle();
+        }
+        catch (NoSuchWindowException e) { // the current window was closed, e.g. by closeWindow
+            current = null;
+        }
+        AdaptiveWait wait = new AdaptiveWait(webDriver, timeoutMillis);
+        try {
+            return wait.until(d -> find(d, isTitle, matches));
+        }
+        catch (TimeoutException e) {
+            throw new TimeoutException("No window with matching " + (isTitle ? "title" : "URL") + " after "
+                    + timeoutMillis + " ms. Found only the following windows:\n" + describe(isTitle), e);
+        }
+        finally {
+            polls.addAndGet(wait.getPollCount());
+        }
+    }
+
+    /**
+     * Forgets a window that was closed.
+     */
+    public synchronized void windowClosed(String handle) {
+        windows.remove(handle);
+        if (handle.equals(current)) {
+            current = null;
+        }
+    }
+
+    /**
+     * @return titles (or URLs) of the known windows, one per line
+     */
+    public synchronized String describe(boolean isTitle) {
+        StringBuilder description = new StringBuilder();
+        for (WindowInfo info : windows.values()) {
+            description.append(info.get(isTitle)).append("\n");
+        }
+        return description.toString();
+    }
+
+    private String find(WebDriver webDriver, boolean isTitle, Predicate<String> matches) {
+        Set<String> handles = webDriver.getWindowHandles();
+        windows.keySet().retainAll(handles);
+        List<String> toInspect = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String handle : handles) {
+            WindowInfo info = windows.computeIfAbsent(handle, key -> new WindowInfo());
+            if (info.needsInspection(now)) {
+                toInspect.add(handle);
+            }
+            else if (matches.test(info.get(isTitle)) && inspect(webDriver, handle, info) && matches.test(info.get(isTitle))) {
+                return handle; // known match, confirmed after switching
+            }
+        }
+        for (String handle : toInspect) {
+            WindowInfo info = windows.get(handle);
+            if (info != null && inspect(webDriver, handle, info) && matches.test(info.get(isTitle))) {
+                return handle;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Switches into the window and reads its title and URL.
+     * @return false if the window has been closed in the meantime or couldn't be read
+     */
+    private boolean inspect(WebDriver webDriver, String handle, WindowInfo info) {
+        try {
+            if (!handle.equals(current)) {
+                webDriver.switchTo().window(handle);
+                current = handle;
+            }
+            if (webDriver instanceof JavascriptExecutor) {
+                List<?> titleAndUrl = (List<?>) ((JavascriptExecutor) webDriver).executeScript(BrowserScripts.WINDOW_INFO);
+                info.title = String.valueOf(titleAndUrl.get(0));
+                info.url = String.valueOf(titleAndUrl.get(1));
+            }
+            else {
+                info.title = webDriver.getTitle();
+                info.url = webDriver.getCurrentUrl();
+            }
+            info.inspected = System.currentTimeMillis();
+        }
+        catch (NoSuchWindowException e) { // closed since the handles were fetched
+            windowClosed(handle);
+            return false;
+        }
+        catch (WebDriverException e) { // e.g. still loading, what was seen before may be outdated, look again on the next poll
+            info.inspected = 0;
+            return false;
+        }
+        return true;
+    }
+}
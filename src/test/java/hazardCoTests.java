@@ -1,8 +1,16 @@
 import PageObjects.LandingPage;
 import PageObjects.LoginPage;
 import SeleniumHelpers.Driver;
+import SeleniumHelpers.DriverPool;
+import SeleniumHelpers.FixtureServer;
+import SeleniumHelpers.K1Logger;
+import SeleniumHelpers.ParallelParameterized;
+import SeleniumHelpers.SessionProperties;
+import org.apache.log4j.Logger;
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
@@ -22,14 +30,16 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestDoc(description =
         "Test cases for successful and unsuccessful login attempts.")
-@RunWith(Parameterized.class)
+@RunWith(ParallelParameterized.class)
 public class successfulLoginTest {
 
     // params
     private String userName;
     private String password;
     private boolean validCredentials;
-    private static Driver driver;
+    // each parameter row runs on its own thread, so each row gets its own driver and log file
+    private Driver driver;
+    private Logger logger;
 
     @Parameterized.Parameters(name = "Username({0}), Password({1}), Valid({2})")
     public static Collection<Object[]> setParameters() {
@@ -48,36 +58,63 @@ public class successfulLoginTest {
     }
 
     @Before
-    public static void setUp() {
-        // Create a new instance of the driver
-        driver = new Driver("testLogger");
+    public void setUp() {
+        // Lease a warm driver for this row and log into a file named after the row
+        driver = DriverPool.getInstance().lease();
+        driver.setLogger("successfulLoginTest_" + userName);
+        logger = driver.getLogger();
 
-        // Go to the test url (we don't actually have one, so it's just made up)
+        // Go to the BaseUrl setting if there is one, otherwise to the local fixture server, which only accepts the valid rows
         logger.info("GIVEN: User has landed on the Login page");
-        driver.get("https://www.hazardco.test.com");
+        driver.get(getBaseUrl());
     }
 
+    private String getBaseUrl() {
+        String baseUrl = SessionProperties.getInstance().getProperty("BaseUrl");
+        if (baseUrl != null && !baseUrl.startsWith("$")) {
+            return baseUrl;
+        }
+        FixtureServer fixtureServer = FixtureServer.getInstance();
+        if (validCredentials) {
+            fixtureServer.addUser(userName, password);
+        }
+        return fixtureServer.getBaseUrl();
+    }
+
+    @Test
     public void loginTests() {
         String testName = "loginTests";
         logger.info("\n***** " + testName + " *****");
         logger.info("WHEN: User enters credentials");
         LoginPage loginPage = new LoginPage(driver).waitUntilLoaded();
-        LandingPage landingPage = loginPage.loginWithUsernameAndPassword(userName, password);
 
         // perform assertions based on test parameters
+        // this test is about login, so it always goes through the UI (other tests can use loginWithCachedSession)
         if (validCredentials) {
+            LandingPage landingPage = loginPage.loginWithUsernameAndPassword(userName, password);
             logger.info("THEN: User is logged in (landing page is shown with all expected elements)");
             assertTrue(landingPage.areAllLandingPageElementsVisible());
         } else {
+            // the landing page never loads for invalid credentials, so don't wait for it
+            loginPage.inputUsernameAndPassword(userName, password);
+            loginPage.clickLoginButton();
             logger.info("THEN: User is NOT logged in (error message shown instead)");
-            assertTrue(loginPage.isLoginErrorMessageShown());
+            assertTrue(loginPage.waitUntilLoaded().isLoginErrorMessageShown());
         }
     }
 
 
+    @After
+    public void tearDown() {
+        // Hand the driver back, the pool clears its cookies and storage, health checks and recycles it
+        DriverPool.getInstance().release(driver);
+    }
+
     @AfterClass
     public static void finalWrapUp() {
-        // Close the driver
-        driver.quit();
+        // Close the drivers and the fixture server, then write out the per-driver log channels in order
+        DriverPool.getInstance().shutdown();
+        FixtureServer.shutdown();
+        K1Logger.mergeChannels();
     }
 }